@@ -0,0 +1,88 @@
+package com.dix.codec.bkv.netty;
+
+import com.dix.codec.bkv.BKV;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes frames through an {@link EmbeddedChannel}, no network involved
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BKVFrameCodecBenchmark {
+    @Param({ "1", "8", "32" })
+    int size;
+
+    @Param({ "true", "false" })
+    boolean direct;
+
+    BKV bkv;
+    EmbeddedChannel encoder;
+    EmbeddedChannel decoder;
+    ByteBuf frames;
+
+    @Setup
+    public void setup() {
+        bkv = new BKV();
+        for (int i = 0; i < size; i++) {
+            bkv.add(i, i * 31);
+        }
+
+        encoder = new EmbeddedChannel(new BKVFrameEncoder(direct));
+        decoder = new EmbeddedChannel(new BKVFrameDecoder());
+
+        frames = direct ? encoder.alloc().directBuffer() : encoder.alloc().heapBuffer();
+        for (int i = 0; i < 16; i++) {
+            encoder.writeOutbound(bkv);
+            ByteBuf out = encoder.readOutbound();
+            frames.writeBytes(out);
+            out.release();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        frames.release();
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) {
+        encoder.writeOutbound(bkv);
+        ByteBuf out = encoder.readOutbound();
+        blackhole.consume(out.readableBytes());
+        out.release();
+    }
+
+    /**
+     * Decode 16 frames from one buffer
+     */
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        decoder.writeInbound(frames.retainedDuplicate());
+        Object msg;
+        while ((msg = decoder.readInbound()) != null) {
+            blackhole.consume(msg);
+        }
+    }
+}
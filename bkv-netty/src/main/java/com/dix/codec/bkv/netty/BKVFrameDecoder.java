@@ -0,0 +1,63 @@
+package com.dix.codec.bkv.netty;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.app.FrameBytes;
+import com.dix.codec.bkv.app.FrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.util.List;
+
+/**
+ * Decodes {@code 0xFF | length | checksum | BKV} frames into {@link BKV} messages,
+ * same framing as {@link FrameDecoder}, whose {@link FrameDecoder#checkFrame(FrameBytes, int, int)} checks length and
+ * checksum. Frames are located with the reader index of the cumulated buffer, invalid frames are skipped one head byte
+ * at a time.
+ */
+public class BKVFrameDecoder extends ByteToMessageDecoder {
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        FrameBytes bytes = in::getUnsignedByte;
+        while (true) {
+            int writerIndex = in.writerIndex();
+            int head = in.indexOf(in.readerIndex(), writerIndex, FrameDecoder.Head);
+            if (head < 0) {
+                in.skipBytes(in.readableBytes());
+                return;
+            }
+
+            in.readerIndex(head);
+            int frameEnd = FrameDecoder.checkFrame(bytes, head, writerIndex);
+            if (frameEnd == FrameDecoder.Incomplete) {
+                return;
+            }
+            if (frameEnd < 0) {
+                in.skipBytes(1);
+                continue;
+            }
+
+            BKV bkv = unpack(in, head + 3, frameEnd);
+            if (bkv.getItems().isEmpty()) {
+                in.skipBytes(1);
+                continue;
+            }
+
+            in.readerIndex(frameEnd);
+            out.add(bkv);
+        }
+    }
+
+    private static BKV unpack(ByteBuf in, int start, int end) {
+        if (in.hasArray()) {
+            int offset = in.arrayOffset();
+            return BKV.unpack(in.array(), offset + start, offset + end).getBKV();
+        }
+        if (in.nioBufferCount() == 1) {
+            return BKV.unpack(in.nioBuffer(start, end - start)).getBKV();
+        }
+
+        return BKV.unpack(ByteBufUtil.getBytes(in, start, end - start, false)).getBKV();
+    }
+}
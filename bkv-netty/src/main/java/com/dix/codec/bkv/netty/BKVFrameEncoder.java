@@ -0,0 +1,56 @@
+package com.dix.codec.bkv.netty;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.app.FrameDecoder;
+import com.dix.codec.bkv.exception.PackKVFailException;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes {@link BKV} messages into {@code 0xFF | length | checksum | BKV} frames,
+ * the BKV is packed straight into an exactly sized, by default direct, buffer from the channel allocator.
+ */
+public class BKVFrameEncoder extends MessageToByteEncoder<BKV> {
+    private static final int HEADER_SIZE = 3;
+
+    public BKVFrameEncoder() {
+        this(true);
+    }
+
+    public BKVFrameEncoder(boolean preferDirect) {
+        super(BKV.class, preferDirect);
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, BKV msg, boolean preferDirect) {
+        int size = HEADER_SIZE + msg.encodedSize();
+        if (preferDirect) {
+            return ctx.alloc().ioBuffer(size);
+        }
+        return ctx.alloc().heapBuffer(size);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, BKV msg, ByteBuf out) {
+        int bodySize = msg.encodedSize();
+        if (bodySize < 1 || bodySize + HEADER_SIZE > FrameDecoder.MaxFrameSize) {
+            throw new PackKVFailException(String.format("invalid frame body size: %d", bodySize));
+        }
+
+        int start = out.writerIndex();
+        out.ensureWritable(HEADER_SIZE + bodySize);
+        out.writeByte(FrameDecoder.Head);
+        out.writeByte(bodySize + 1);
+        out.writeByte(0);
+
+        int bodyStart = out.writerIndex();
+        ByteBuffer body = out.nioBuffer(bodyStart, bodySize);
+        msg.packTo(body);
+        out.writerIndex(bodyStart + bodySize);
+
+        out.setByte(start + 2, FrameDecoder.checksum(out::getUnsignedByte, bodyStart, bodyStart + bodySize));
+    }
+}
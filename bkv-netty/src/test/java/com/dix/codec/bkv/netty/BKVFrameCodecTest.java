@@ -0,0 +1,80 @@
+package com.dix.codec.bkv.netty;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.CodecUtil;
+import com.dix.codec.bkv.exception.PackKVFailException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKVFrameCodecTest {
+    private static final String HEX = "FF0D15030101010301020103010301FF113603010101030102130301030403010701";
+
+    @Test
+    void decode() {
+        EmbeddedChannel channel = new EmbeddedChannel(new BKVFrameDecoder());
+        byte[] buf = CodecUtil.hexToBytes("0102FF03FF0D16030101010301020103010301" + HEX);
+        for (int i = 0; i < buf.length; i += 7) {
+            ByteBuf in = channel.alloc().directBuffer();
+            in.writeBytes(buf, i, Math.min(7, buf.length - i));
+            channel.writeInbound(in);
+        }
+
+        BKV bkv1 = channel.readInbound();
+        BKV bkv2 = channel.readInbound();
+        assertNull(channel.readInbound());
+        assertEquals(1L, bkv1.getNumberValue(1));
+        assertEquals(0x13L, bkv2.getNumberValue(2));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void decodeHeap() {
+        EmbeddedChannel channel = new EmbeddedChannel(new BKVFrameDecoder());
+        channel.writeInbound(Unpooled.wrappedBuffer(CodecUtil.hexToBytes(HEX)));
+        assertEquals(2, channel.inboundMessages().size());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    void encode() {
+        EmbeddedChannel channel = new EmbeddedChannel(new BKVFrameEncoder());
+        BKV bkv = new BKV();
+        bkv.add(1, 1);
+        bkv.add(2, 1);
+        bkv.add(3, 1);
+        channel.writeOutbound(bkv);
+
+        ByteBuf out = channel.readOutbound();
+        assertEquals("FF0D15030101010301020103010301", ByteBufUtil.hexDump(out).toUpperCase());
+        out.release();
+
+        assertThrows(EncoderException.class, () -> channel.writeOutbound(new BKV()));
+        BKV large = new BKV();
+        large.add(1, new byte[300]);
+        EncoderException e = assertThrows(EncoderException.class, () -> channel.writeOutbound(large));
+        assertTrue(e.getCause() instanceof PackKVFailException);
+    }
+
+    @Test
+    void roundTrip() {
+        EmbeddedChannel channel = new EmbeddedChannel(new BKVFrameEncoder(), new BKVFrameDecoder());
+        for (int i = 0; i < 100; i++) {
+            BKV bkv = new BKV();
+            bkv.add(1, i);
+            bkv.add("name", "frame-" + i);
+            channel.writeOutbound(bkv);
+            ByteBuf out = channel.readOutbound();
+            channel.writeInbound(out);
+
+            BKV decoded = channel.readInbound();
+            assertEquals(i, decoded.getLong(1, -1));
+            assertEquals("frame-" + i, decoded.getStringValue("name"));
+        }
+    }
+}
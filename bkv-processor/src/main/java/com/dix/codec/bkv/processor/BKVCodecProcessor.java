@@ -0,0 +1,389 @@
+package com.dix.codec.bkv.processor;
+
+import com.dix.codec.bkv.bind.BKVCodec;
+import com.dix.codec.bkv.bind.BKVField;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates a {@link BKVCodec} for every class with {@link BKVField} fields, decoders switch on the raw number key
+ * and store decoded values straight into the fields.
+ * <p>
+ * Classes whose bound fields or default constructor are not accessible from their package are skipped with a warning,
+ * {@link BKVCodec#of(Class)} falls back to the reflective codec for them.
+ */
+@SupportedAnnotationTypes("com.dix.codec.bkv.bind.BKVField")
+public class BKVCodecProcessor extends AbstractProcessor {
+    private static final class Binding {
+        final VariableElement field;
+        final String kind;
+        final boolean nullable;
+        final boolean isStringKey;
+        final long numberKey;
+        final String name;
+
+        Binding(VariableElement field, String kind, boolean nullable, boolean isStringKey, long numberKey, String name) {
+            this.field = field;
+            this.kind = kind;
+            this.nullable = nullable;
+            this.isStringKey = isStringKey;
+            this.numberKey = numberKey;
+            this.name = name;
+        }
+
+        String fieldName() {
+            return field.getSimpleName().toString();
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(BKVField.class)) {
+            types.add((TypeElement) element.getEnclosingElement());
+        }
+
+        for (TypeElement type : types) {
+            List<Binding> bindings = new ArrayList<>();
+            if (bind(type, type, bindings) && isAccessible(type)) {
+                write(type, bindings);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Collect bindings of type and its super classes, false if the codec can not be generated
+     */
+    private boolean bind(TypeElement owner, TypeElement type, List<Binding> bindings) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement superType = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (!superType.getQualifiedName().contentEquals("java.lang.Object") && !bind(owner, superType, bindings)) {
+                return false;
+            }
+        }
+
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            BKVField annotation = field.getAnnotation(BKVField.class);
+            if (annotation == null) {
+                continue;
+            }
+
+            boolean isStringKey = !annotation.name().isEmpty();
+            if (isStringKey == annotation.key() >= 0) {
+                error(field, "either key or name must be set");
+                return false;
+            }
+            if (annotation.name().getBytes(StandardCharsets.UTF_8).length > 0x7F) {
+                error(field, "key name longer than 127 bytes");
+                return false;
+            }
+
+            String kind = kindOf(field.asType());
+            if (kind == null) {
+                error(field, "unsupported field type: " + field.asType());
+                return false;
+            }
+
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                error(field, "static or final field can not be bound");
+                return false;
+            }
+            if (modifiers.contains(Modifier.PRIVATE)
+                    || (!modifiers.contains(Modifier.PUBLIC) && !packageOf(type).equals(packageOf(owner)))) {
+                warning(owner, "field " + field.getSimpleName() + " is not accessible, the reflective codec is used");
+                return false;
+            }
+
+            boolean nullable = !field.asType().getKind().isPrimitive();
+            bindings.add(new Binding(field, kind, nullable, isStringKey, annotation.key(), annotation.name()));
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (Binding binding : bindings) {
+            if (!keys.add(binding.isStringKey ? "s:" + binding.name : "n:" + binding.numberKey)) {
+                error(binding.field, "duplicate key");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isAccessible(TypeElement type) {
+        if (!type.getTypeParameters().isEmpty() || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            warning(type, "generic or abstract class, the reflective codec is used");
+            return false;
+        }
+
+        for (Element element = type; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                warning(type, "private class, the reflective codec is used");
+                return false;
+            }
+            if (element instanceof TypeElement && ((TypeElement) element).getNestingKind() == NestingKind.MEMBER
+                    && !element.getModifiers().contains(Modifier.STATIC)) {
+                warning(type, "inner class, the reflective codec is used");
+                return false;
+            }
+        }
+
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+
+        warning(type, "no accessible default constructor, the reflective codec is used");
+        return false;
+    }
+
+    private static String kindOf(TypeMirror type) {
+        switch (type.toString()) {
+            case "long":
+            case "java.lang.Long":
+                return "long";
+            case "int":
+            case "java.lang.Integer":
+                return "int";
+            case "short":
+            case "java.lang.Short":
+                return "short";
+            case "byte":
+            case "java.lang.Byte":
+                return "byte";
+            case "boolean":
+            case "java.lang.Boolean":
+                return "boolean";
+            case "float":
+            case "java.lang.Float":
+                return "float";
+            case "double":
+            case "java.lang.Double":
+                return "double";
+            case "java.lang.String":
+                return "String";
+            case "byte[]":
+                return "byte[]";
+            default:
+                return null;
+        }
+    }
+
+    private String packageOf(TypeElement type) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        return packageElement.getQualifiedName().toString();
+    }
+
+    private void write(TypeElement type, List<Binding> bindings) {
+        String packageName = packageOf(type);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String codecName = BKVCodec.generatedName(binaryName);
+        String simpleName = codecName.substring(codecName.lastIndexOf('.') + 1);
+        String typeName = type.getQualifiedName().toString();
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import com.dix.codec.bkv.CodecUtil;\n");
+        sb.append("import com.dix.codec.bkv.bind.BKVCodec;\n\n");
+        sb.append("/**\n * Generated by ").append(BKVCodecProcessor.class.getName()).append(" for {@link ").append(typeName).append("}\n */\n");
+        sb.append("public final class ").append(simpleName).append(" extends BKVCodec<").append(typeName).append("> {\n");
+
+        for (int i = 0; i < bindings.size(); i++) {
+            Binding binding = bindings.get(i);
+            sb.append("    private static final byte[] KEY_").append(i).append(" = ");
+            if (binding.isStringKey) {
+                sb.append("stringBytes(\"").append(escape(binding.name)).append("\");\n");
+            } else {
+                sb.append("CodecUtil.encodeNumber(").append(binding.numberKey).append("L);\n");
+            }
+        }
+
+        sb.append("\n    public ").append(simpleName).append("() {\n    }\n\n");
+        sb.append("    @Override\n    public ").append(typeName).append(" newInstance() {\n");
+        sb.append("        return new ").append(typeName).append("();\n    }\n\n");
+
+        writeDecodeNumberKey(sb, typeName, bindings);
+        writeDecodeStringKey(sb, typeName, bindings);
+        writeEncodedSize(sb, typeName, bindings);
+        writeEncodeTo(sb, typeName, bindings);
+        sb.append("}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(codecName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(sb.toString());
+            }
+        } catch (IOException e) {
+            error(type, "failed to write " + codecName + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeDecodeNumberKey(StringBuilder sb, String typeName, List<Binding> bindings) {
+        sb.append("    @Override\n    protected void decodeNumberKey(").append(typeName)
+                .append(" target, long key, byte[] buf, int offset, int length) {\n");
+
+        sb.append("        if (key != (int) key) {\n");
+        for (Binding binding : bindings) {
+            if (!binding.isStringKey && binding.numberKey != (int) binding.numberKey) {
+                sb.append("            if (key == ").append(binding.numberKey).append("L) {\n");
+                sb.append("                ").append(assign(binding, "offset", "length")).append("\n");
+                sb.append("            }\n");
+            }
+        }
+        sb.append("            return;\n        }\n\n");
+
+        sb.append("        switch ((int) key) {\n");
+        for (Binding binding : bindings) {
+            if (!binding.isStringKey && binding.numberKey == (int) binding.numberKey) {
+                sb.append("            case ").append(binding.numberKey).append(":\n");
+                sb.append("                ").append(assign(binding, "offset", "length")).append("\n");
+                sb.append("                break;\n");
+            }
+        }
+        sb.append("        }\n    }\n\n");
+    }
+
+    private static void writeDecodeStringKey(StringBuilder sb, String typeName, List<Binding> bindings) {
+        sb.append("    @Override\n    protected void decodeStringKey(").append(typeName)
+                .append(" target, byte[] buf, int keyOffset, int keyLength, int valueOffset, int valueLength) {\n");
+        for (int i = 0; i < bindings.size(); i++) {
+            Binding binding = bindings.get(i);
+            if (binding.isStringKey) {
+                sb.append("        if (keyEquals(buf, keyOffset, keyLength, KEY_").append(i).append(")) {\n");
+                sb.append("            ").append(assign(binding, "valueOffset", "valueLength")).append("\n");
+                sb.append("            return;\n        }\n");
+            }
+        }
+        sb.append("    }\n\n");
+    }
+
+    private static void writeEncodedSize(StringBuilder sb, String typeName, List<Binding> bindings) {
+        sb.append("    @Override\n    public int encodedSize(").append(typeName).append(" value) {\n");
+        sb.append("        int size = 0;\n");
+        for (int i = 0; i < bindings.size(); i++) {
+            Binding binding = bindings.get(i);
+            String field = "value." + binding.fieldName();
+            String key = "KEY_" + i;
+            String size;
+            switch (binding.kind) {
+                case "float": size = "kvSize(" + key + ", 4)"; break;
+                case "double": size = "kvSize(" + key + ", 8)"; break;
+                case "String": size = "kvSize(" + key + ", stringBytes(" + field + ").length)"; break;
+                case "byte[]": size = "kvSize(" + key + ", " + field + ".length)"; break;
+                default: size = "numberSize(" + key + ", " + number(binding, field) + ")";
+            }
+            appendStatement(sb, binding, field, "size += " + size + ";");
+        }
+        sb.append("        return size;\n    }\n\n");
+    }
+
+    private static void writeEncodeTo(StringBuilder sb, String typeName, List<Binding> bindings) {
+        sb.append("    @Override\n    protected int encodeTo(").append(typeName).append(" value, byte[] dst, int offset) {\n");
+        for (int i = 0; i < bindings.size(); i++) {
+            Binding binding = bindings.get(i);
+            String field = "value." + binding.fieldName();
+            String args = "dst, offset, KEY_" + i + ", " + binding.isStringKey + ", ";
+            String put;
+            switch (binding.kind) {
+                case "float": put = "putFloat(" + args + field + ")"; break;
+                case "double": put = "putDouble(" + args + field + ")"; break;
+                case "String": put = "putBytes(" + args + "stringBytes(" + field + "))"; break;
+                case "byte[]": put = "putBytes(" + args + field + ")"; break;
+                default: put = "putNumber(" + args + number(binding, field) + ")";
+            }
+            appendStatement(sb, binding, field, "offset = " + put + ";");
+        }
+        sb.append("        return offset;\n    }\n");
+    }
+
+    private static void appendStatement(StringBuilder sb, Binding binding, String field, String statement) {
+        if (binding.nullable) {
+            sb.append("        if (").append(field).append(" != null) {\n");
+            sb.append("            ").append(statement).append("\n");
+            sb.append("        }\n");
+        } else {
+            sb.append("        ").append(statement).append("\n");
+        }
+    }
+
+    private static String number(Binding binding, String field) {
+        return binding.kind.equals("boolean") ? "(" + field + " ? 1 : 0)" : field;
+    }
+
+    private static String assign(Binding binding, String offset, String length) {
+        String range = "buf, " + offset + ", " + length;
+        String value;
+        switch (binding.kind) {
+            case "long": value = "CodecUtil.decodeNumber(" + range + ")"; break;
+            case "int":
+            case "short":
+            case "byte": value = "(" + binding.kind + ") CodecUtil.decodeNumber(" + range + ")"; break;
+            case "boolean": value = "CodecUtil.decodeBoolean(" + range + ")"; break;
+            case "float": value = "floatValue(" + range + ")"; break;
+            case "double": value = "doubleValue(" + range + ")"; break;
+            case "String": value = "stringValue(" + range + ")"; break;
+            default: value = "bytesValue(" + range + ")";
+        }
+
+        return "target." + binding.fieldName() + " = " + value + ";";
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7E) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void warning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+}
@@ -0,0 +1,143 @@
+package com.dix.codec.bkv.processor;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.bind.BKVCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKVCodecProcessorTest {
+    private static final String SOURCE = String.join("\n",
+            "package com.example;",
+            "import com.dix.codec.bkv.bind.BKVField;",
+            "public class Packet {",
+            "    @BKVField(key = 0x01) public short type;",
+            "    @BKVField(key = 0x02) Long requestId;",
+            "    @BKVField(key = 0x03) boolean online;",
+            "    @BKVField(key = 0x04) Float temperature;",
+            "    @BKVField(key = 0x123456789L) double latitude;",
+            "    @BKVField(name = \"name\") String name;",
+            "    @BKVField(name = \"raw\") byte[] raw;",
+            "    public static class Nested {",
+            "        @BKVField(key = 0x01) int value;",
+            "    }",
+            "    public static class Hidden {",
+            "        @BKVField(key = 0x01) private int value;",
+            "    }",
+            "}");
+
+    private static class Source extends SimpleJavaFileObject {
+        private final String content;
+
+        Source(String className, String content) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+    private static boolean compile(Path out, DiagnosticCollector<JavaFileObject> diagnostics, String className, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> options = Arrays.asList("-d", out.toString(), "-classpath", System.getProperty("java.class.path"));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null,
+                Collections.singletonList(new Source(className, source)));
+        task.setProcessors(Collections.singletonList(new BKVCodecProcessor()));
+        return task.call();
+    }
+
+    private static ClassLoader compile(Path out, DiagnosticCollector<JavaFileObject> diagnostics) throws IOException {
+        assertTrue(compile(out, diagnostics, "com.example.Packet", SOURCE), diagnostics.getDiagnostics().toString());
+
+        return new URLClassLoader(new URL[]{out.toUri().toURL()}, BKVCodecProcessorTest.class.getClassLoader());
+    }
+
+    private static Field field(Class<?> type, String name) throws NoSuchFieldException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void generate(@TempDir Path out) throws Exception {
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        ClassLoader loader = compile(out, diagnostics);
+
+        assertTrue(Files.exists(out.resolve("com/example/PacketBKVCodec.class")));
+        assertTrue(Files.exists(out.resolve("com/example/Packet_NestedBKVCodec.class")));
+        assertFalse(Files.exists(out.resolve("com/example/Packet_HiddenBKVCodec.class")));
+        assertTrue(diagnostics.getDiagnostics().stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.WARNING
+                && d.getMessage(null).contains("reflective codec")));
+
+        Class<Object> type = (Class<Object>) loader.loadClass("com.example.Packet");
+        BKVCodec<Object> codec = BKVCodec.of(type);
+        assertEquals("com.example.PacketBKVCodec", codec.getClass().getName());
+        BKVCodec<Object> reflective = BKVCodec.reflective(type);
+
+        BKV bkv = new BKV();
+        bkv.add(1, 7);
+        bkv.add(2, 0x123456789AL);
+        bkv.add(3, true);
+        bkv.add(4, 1.5f);
+        bkv.add(0x123456789L, 2.25);
+        bkv.add("name", "device");
+        bkv.add("raw", new byte[]{1, 2});
+        bkv.add(99, 1);
+        byte[] packed = bkv.pack();
+
+        Object generated = codec.decode(packed);
+        Object expected = reflective.decode(packed);
+        assertEquals((short) 7, field(type, "type").get(generated));
+        for (String field : Arrays.asList("type", "requestId", "online", "temperature", "latitude", "name")) {
+            assertEquals(field(type, field).get(expected), field(type, field).get(generated), field);
+        }
+        assertArrayEquals((byte[]) field(type, "raw").get(expected), (byte[]) field(type, "raw").get(generated));
+
+        assertArrayEquals(reflective.encode(expected), codec.encode(generated));
+        assertEquals(codec.encodedSize(generated), codec.encode(generated).length);
+
+        Object empty = codec.newInstance();
+        assertArrayEquals(reflective.encode(empty), codec.encode(empty));
+
+        Class<?> hidden = loader.loadClass("com.example.Packet$Hidden");
+        assertNotEquals("com.example.Packet_HiddenBKVCodec", BKVCodec.of(hidden).getClass().getName());
+    }
+
+    @Test
+    void longStringKey(@TempDir Path out) {
+        String name = String.join("", Collections.nCopies(8, "0123456789abcdef"));
+        String source = String.join("\n",
+                "package com.example;",
+                "import com.dix.codec.bkv.bind.BKVField;",
+                "public class LongName {",
+                "    @BKVField(name = \"" + name + "\") String name;",
+                "}");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        assertFalse(compile(out, diagnostics, "com.example.LongName", source));
+        assertTrue(diagnostics.getDiagnostics().stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.ERROR
+                && d.getMessage(null).contains("longer than 127 bytes")), diagnostics.getDiagnostics().toString());
+    }
+}
@@ -0,0 +1,386 @@
+package com.dix.codec.bkv.server;
+
+import com.dix.codec.bkv.BKVView;
+import com.dix.codec.bkv.app.BKVFrameChannelReader;
+import com.dix.codec.bkv.app.FrameFormat;
+import com.dix.codec.bkv.app.FrameStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reference TCP ingest server, decodes frames of many connections into one bounded queue.
+ * <p>
+ * An acceptor thread hands connections round robin to worker threads, every worker runs a {@link Selector} over its
+ * non-blocking connections and every connection has its own {@link BKVFrameChannelReader}.
+ * When the queue is full a connection stops reading until taking a frame wakes its worker to retry, so the socket
+ * buffers fill up and the client is slowed down by TCP flow control instead of the server buffering without bound.
+ * <pre>
+ * try (BKVServer server = BKVServer.start(new InetSocketAddress(9000), 4096)) {
+ *     while (running) {
+ *         ServerFrame frame = server.take();
+ *         handle(frame.getConnectionId(), frame.getBKV());
+ *     }
+ * }
+ * </pre>
+ */
+public final class BKVServer implements Closeable {
+    /**
+     * Pause after a failed accept, e.g. out of file descriptors, so the acceptor does not spin
+     */
+    private static final long ACCEPT_BACKOFF_MILLIS = 100;
+
+    private final ServerSocketChannel serverChannel;
+    private final BlockingQueue<ServerFrame> queue;
+    private final FrameFormat format;
+    private final Worker[] workers;
+    private final Thread acceptor;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final AtomicLong connectionIds = new AtomicLong();
+    private volatile boolean closed;
+
+    private BKVServer(ServerSocketChannel serverChannel, int queueCapacity, int workerThreads, FrameFormat format) throws IOException {
+        this.serverChannel = serverChannel;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.format = format;
+        this.workers = new Worker[workerThreads];
+        for (int i = 0; i < workerThreads; i++) {
+            workers[i] = new Worker(i);
+        }
+        this.acceptor = new Thread(this::accept, "bkv-server-acceptor");
+    }
+
+    public static BKVServer start(InetSocketAddress address, int queueCapacity) throws IOException {
+        return start(address, queueCapacity, Runtime.getRuntime().availableProcessors(), FrameFormat.Checksummed);
+    }
+
+    public static BKVServer start(InetSocketAddress address, int queueCapacity, int workerThreads, FrameFormat format) throws IOException {
+        if (queueCapacity < 1 || workerThreads < 1) {
+            throw new IllegalArgumentException(String.format("queueCapacity=%d, workerThreads=%d", queueCapacity, workerThreads));
+        }
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        BKVServer server;
+        try {
+            serverChannel.bind(address, 1024);
+            server = new BKVServer(serverChannel, queueCapacity, workerThreads, format);
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+
+        for (Worker worker : server.workers) {
+            worker.thread.start();
+        }
+        server.acceptor.start();
+        return server;
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Next frame, blocks until one is received
+     */
+    public ServerFrame take() throws InterruptedException {
+        ServerFrame frame = queue.take();
+        wakeStalled();
+        return handedOff(frame);
+    }
+
+    /**
+     * Next frame, null if none is received within timeout
+     */
+    public ServerFrame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        ServerFrame frame = queue.poll(timeout, unit);
+        if (frame == null) {
+            return null;
+        }
+
+        wakeStalled();
+        return handedOff(frame);
+    }
+
+    /**
+     * Move up to maxFrames received frames to target without blocking, returns the count of frames moved
+     */
+    public int drainTo(Collection<? super ServerFrame> target, int maxFrames) {
+        List<ServerFrame> frames = new ArrayList<>(Math.min(maxFrames, queue.size()));
+        int n = queue.drainTo(frames, maxFrames);
+        if (n > 0) {
+            wakeStalled();
+        }
+        for (ServerFrame frame : frames) {
+            target.add(handedOff(frame));
+        }
+        return n;
+    }
+
+    /**
+     * Let workers with stalled connections retry now that the queue has room
+     */
+    private void wakeStalled() {
+        for (Worker worker : workers) {
+            if (worker.hasStalled) {
+                worker.selector.wakeup();
+            }
+        }
+    }
+
+    private ServerFrame handedOff(ServerFrame frame) {
+        metrics.handoffLatency.record(System.nanoTime() - frame.getReceivedNanos());
+        return frame;
+    }
+
+    /**
+     * Stop accepting, close all connections and stop the threads, frames already queued can still be taken
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        serverChannel.close();
+        for (Worker worker : workers) {
+            worker.selector.wakeup();
+        }
+
+        try {
+            acceptor.join();
+            for (Worker worker : workers) {
+                worker.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // the acceptor may register a channel after a worker drained its registrations
+        for (Worker worker : workers) {
+            worker.closePending();
+        }
+    }
+
+    private void accept() {
+        int next = 0;
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (closed) {
+                    break;
+                }
+                metrics.acceptErrors.increment();
+                try {
+                    Thread.sleep(ACCEPT_BACKOFF_MILLIS);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                continue;
+            }
+
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                continue;
+            }
+
+            metrics.connectionsAccepted.increment();
+            workers[next].register(channel);
+            next = (next + 1) % workers.length;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Connection {
+        final long id;
+        final SocketChannel channel;
+        final BKVFrameChannelReader reader;
+        SelectionKey key;
+        ServerFrame stalled;
+        long bytesReceived;
+        long framesInvalid;
+
+        Connection(long id, SocketChannel channel, FrameFormat format) {
+            this.id = id;
+            this.channel = channel;
+            this.reader = new BKVFrameChannelReader(channel, format);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+        final List<Connection> stalled = new ArrayList<>();
+        /**
+         * Set before stalled connections are retried, so a consumer freeing room after a failed retry wakes the selector
+         */
+        volatile boolean hasStalled;
+
+        Worker(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "bkv-server-worker-" + index);
+        }
+
+        void register(SocketChannel channel) {
+            registrations.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    registerPending();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (key.isValid() && key.isReadable()) {
+                            read((Connection) key.attachment());
+                        }
+                    }
+
+                    if (!stalled.isEmpty()) {
+                        hasStalled = true;
+                        resumeStalled();
+                        hasStalled = !stalled.isEmpty();
+                    }
+                }
+            } catch (IOException e) {
+                // selector failed, connections are closed below
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeConnection((Connection) key.attachment());
+                }
+                closePending();
+                closeQuietly(selector);
+            }
+        }
+
+        void closePending() {
+            for (SocketChannel channel; (channel = registrations.poll()) != null; ) {
+                closeQuietly(channel);
+                metrics.connectionsClosed.increment();
+            }
+        }
+
+        private void registerPending() {
+            for (SocketChannel channel; (channel = registrations.poll()) != null; ) {
+                Connection connection = new Connection(connectionIds.incrementAndGet(), channel, format);
+                try {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (ClosedChannelException e) {
+                    metrics.connectionsClosed.increment();
+                }
+            }
+        }
+
+        private void resumeStalled() {
+            // read may stall a connection again, so walk a copy
+            Connection[] connections = stalled.toArray(new Connection[0]);
+            stalled.clear();
+            for (Connection connection : connections) {
+                if (!queue.offer(connection.stalled)) {
+                    stalled.add(connection);
+                    continue;
+                }
+
+                connection.stalled = null;
+                if (connection.key.isValid()) {
+                    connection.key.interestOps(SelectionKey.OP_READ);
+                    // frames already buffered get no read event
+                    read(connection);
+                }
+            }
+        }
+
+        private void read(Connection connection) {
+            try {
+                while (connection.stalled == null) {
+                    BKVView view = connection.reader.poll();
+                    updateStats(connection);
+                    if (view == null) {
+                        if (connection.reader.isEndOfStream()) {
+                            closeConnection(connection);
+                        }
+                        return;
+                    }
+
+                    ServerFrame frame = new ServerFrame(connection.id, view.toBKV(), System.nanoTime());
+                    metrics.framesReceived.increment();
+                    if (!queue.offer(frame)) {
+                        connection.stalled = frame;
+                        connection.key.interestOps(0);
+                        stalled.add(connection);
+                        metrics.stalls.increment();
+                    }
+                }
+            } catch (Exception e) {
+                // reset by peer, the reader does not declare IOException, or an invalid raw kv, the connection can not be resumed
+                updateStats(connection);
+                closeConnection(connection);
+            }
+        }
+
+        private void updateStats(Connection connection) {
+            FrameStats stats = connection.reader.getStats();
+            long bytes = stats.getBytesReceived();
+            long invalid = stats.getInvalidChecksum() + stats.getInvalidFrames();
+            metrics.bytesReceived.add(bytes - connection.bytesReceived);
+            metrics.framesInvalid.add(invalid - connection.framesInvalid);
+            connection.bytesReceived = bytes;
+            connection.framesInvalid = invalid;
+        }
+
+        private void closeConnection(Connection connection) {
+            if (connection.key != null) {
+                connection.key.cancel();
+            }
+            if (connection.channel.isOpen()) {
+                closeQuietly(connection.channel);
+                metrics.connectionsClosed.increment();
+            }
+            if (connection.stalled != null) {
+                stalled.remove(connection);
+            }
+        }
+    }
+}
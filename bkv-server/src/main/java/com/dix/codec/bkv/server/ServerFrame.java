@@ -0,0 +1,36 @@
+package com.dix.codec.bkv.server;
+
+import com.dix.codec.bkv.BKV;
+
+/**
+ * Frame received by a {@link BKVServer}, frames of a connection are queued in the order they are received
+ */
+public final class ServerFrame {
+    private final long connectionId;
+    private final BKV bkv;
+    private final long receivedNanos;
+
+    ServerFrame(long connectionId, BKV bkv, long receivedNanos) {
+        this.connectionId = connectionId;
+        this.bkv = bkv;
+        this.receivedNanos = receivedNanos;
+    }
+
+    /**
+     * Id of the connection, unique within a server
+     */
+    public long getConnectionId() {
+        return connectionId;
+    }
+
+    public BKV getBKV() {
+        return bkv;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the frame was decoded
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+}
@@ -0,0 +1,80 @@
+package com.dix.codec.bkv.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link BKVServer}, updated by the worker threads and safe to read from any thread
+ */
+public final class ServerMetrics {
+    final LongAdder connectionsAccepted = new LongAdder();
+    final LongAdder connectionsClosed = new LongAdder();
+    final LongAdder acceptErrors = new LongAdder();
+    final LongAdder bytesReceived = new LongAdder();
+    final LongAdder framesReceived = new LongAdder();
+    final LongAdder framesInvalid = new LongAdder();
+    final LongAdder stalls = new LongAdder();
+    final LatencyHistogram handoffLatency = new LatencyHistogram();
+    private final long startNanos = System.nanoTime();
+
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.sum();
+    }
+
+    public long getConnectionsOpen() {
+        return connectionsAccepted.sum() - connectionsClosed.sum();
+    }
+
+    /**
+     * Failed accepts, e.g. out of file descriptors, the acceptor backs off and keeps accepting
+     */
+    public long getAcceptErrors() {
+        return acceptErrors.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Frames decoded, including the ones still waiting for room in the queue
+     */
+    public long getFramesReceived() {
+        return framesReceived.sum();
+    }
+
+    /**
+     * Frames failed checksum or unpacking, and bytes skipped while resyncing are not counted
+     */
+    public long getFramesInvalid() {
+        return framesInvalid.sum();
+    }
+
+    /**
+     * Times a connection stopped reading because the queue was full
+     */
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    /**
+     * Time from decoding a frame to taking it from the server
+     */
+    public LatencyHistogram getHandoffLatency() {
+        return handoffLatency;
+    }
+
+    /**
+     * Frames received per second since the server started
+     */
+    public double getFramesPerSecond() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : getFramesReceived() * 1e9 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("connections=%d/%d, acceptErrors=%d, bytes=%d, frames=%d (%.0f/s), invalid=%d, stalls=%d, handoff: %s",
+                getConnectionsOpen(), getConnectionsAccepted(), getAcceptErrors(), getBytesReceived(), getFramesReceived(), getFramesPerSecond(),
+                getFramesInvalid(), getStalls(), handoffLatency);
+    }
+}
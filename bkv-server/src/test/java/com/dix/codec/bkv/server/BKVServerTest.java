@@ -0,0 +1,181 @@
+package com.dix.codec.bkv.server;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.app.FrameFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKVServerTest {
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    /**
+     * {@code 0xFF | length | checksum | BKV} frame of client and sequence
+     */
+    private static byte[] frame(long client, long seq) throws IOException {
+        BKV bkv = new BKV();
+        bkv.add(1, client);
+        bkv.add(2, seq);
+        byte[] body = bkv.pack();
+
+        int sum = 0;
+        for (byte b : body) {
+            sum += b & 0xFF;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(body.length + 1);
+        out.write(sum);
+        out.write(body);
+        return out.toByteArray();
+    }
+
+    private static void writeFully(SocketChannel channel, byte[] buf) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(buf);
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    private static void await(BKVServer server, long connectionsOpen) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.getMetrics().getConnectionsOpen() != connectionsOpen && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(connectionsOpen, server.getMetrics().getConnectionsOpen());
+    }
+
+    @Test
+    void loadManyConnections() throws Exception {
+        int clients = 4;
+        int connectionsPerClient = 50;
+        int framesPerConnection = 100;
+        int total = clients * connectionsPerClient * framesPerConnection;
+
+        try (BKVServer server = BKVServer.start(LOOPBACK, 256, 2, FrameFormat.Checksummed)) {
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                futures.add(pool.submit(() -> {
+                    SocketChannel[] channels = new SocketChannel[connectionsPerClient];
+                    for (int i = 0; i < channels.length; i++) {
+                        channels[i] = SocketChannel.open(server.getAddress());
+                    }
+                    // interleave the connections so every worker sees many active connections
+                    for (int seq = 0; seq < framesPerConnection; seq++) {
+                        for (int i = 0; i < channels.length; i++) {
+                            writeFully(channels[i], frame(client * connectionsPerClient + i, seq));
+                        }
+                    }
+                    for (SocketChannel channel : channels) {
+                        channel.close();
+                    }
+                    return null;
+                }));
+            }
+
+            Map<Long, Long> nextSeq = new HashMap<>();
+            Map<Long, Long> connectionOfClient = new HashMap<>();
+            long bytes = 0;
+            for (int i = 0; i < total; i++) {
+                ServerFrame frame = server.poll(30, TimeUnit.SECONDS);
+                assertNotNull(frame, "frames received: " + i + " " + server.getMetrics());
+
+                long id = frame.getBKV().getNumberValue(1);
+                long seq = frame.getBKV().getNumberValue(2);
+                assertEquals(nextSeq.getOrDefault(id, 0L), seq);
+                nextSeq.put(id, seq + 1);
+                bytes += frame(id, seq).length;
+                assertEquals(connectionOfClient.computeIfAbsent(id, k -> frame.getConnectionId()), frame.getConnectionId());
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            pool.shutdown();
+
+            assertEquals(clients * connectionsPerClient, nextSeq.size());
+            assertNull(server.poll(10, TimeUnit.MILLISECONDS));
+            await(server, 0);
+
+            ServerMetrics metrics = server.getMetrics();
+            assertEquals(clients * connectionsPerClient, metrics.getConnectionsAccepted());
+            assertEquals(total, metrics.getFramesReceived());
+            assertEquals(0, metrics.getFramesInvalid());
+            assertEquals(bytes, metrics.getBytesReceived());
+            assertEquals(total, metrics.getHandoffLatency().getCount());
+        }
+    }
+
+    @Test
+    void backpressure() throws Exception {
+        int frames = 2000;
+        try (BKVServer server = BKVServer.start(LOOPBACK, 4, 1, FrameFormat.Checksummed);
+             SocketChannel channel = SocketChannel.open(server.getAddress())) {
+            for (int seq = 0; seq < frames; seq++) {
+                writeFully(channel, frame(1, seq));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (server.getMetrics().getStalls() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+
+            // queue full plus the one frame the stalled connection holds, the rest waits in the socket buffers
+            ServerMetrics metrics = server.getMetrics();
+            assertEquals(1, metrics.getStalls());
+            assertEquals(5, metrics.getFramesReceived());
+            assertTrue(metrics.getBytesReceived() < (long) frames * frame(1, 0).length);
+
+            List<ServerFrame> received = new ArrayList<>();
+            assertEquals(4, server.drainTo(received, 100));
+            while (received.size() < frames) {
+                ServerFrame frame = server.poll(10, TimeUnit.SECONDS);
+                assertNotNull(frame, "frames received: " + received.size());
+                received.add(frame);
+            }
+
+            for (int seq = 0; seq < frames; seq++) {
+                assertEquals(seq, received.get(seq).getBKV().getNumberValue(2));
+            }
+            assertEquals(frames, metrics.getFramesReceived());
+            assertTrue(metrics.getStalls() > 1);
+        }
+    }
+
+    @Test
+    void closeWithOpenConnections() throws Exception {
+        BKVServer server = BKVServer.start(LOOPBACK, 16, 2, FrameFormat.Checksummed);
+        List<SocketChannel> channels = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            channels.add(SocketChannel.open(server.getAddress()));
+        }
+        await(server, 3);
+
+        server.close();
+        assertEquals(3, server.getMetrics().getConnectionsAccepted());
+        assertEquals(0, server.getMetrics().getConnectionsOpen());
+        assertEquals(0, server.getMetrics().getAcceptErrors());
+        for (SocketChannel channel : channels) {
+            assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.dix.codec.bkv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffer of concatenated length prefixed frames decoded one after another and with {@link BKVBatch}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BKVBatchBenchmark {
+    @Param({ "100000" })
+    int frames;
+
+    byte[] buf;
+
+    @Setup
+    public void setup() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < frames; i++) {
+            byte[] packed = BenchmarkData.build(20, BenchmarkData.MIX_MIXED).pack();
+            out.write(CodecUtil.encodeLength(packed.length));
+            out.write(packed);
+        }
+        buf = out.toByteArray();
+    }
+
+    @Benchmark
+    public List<BKV> sequential() {
+        List<BKV> result = new ArrayList<>();
+        int p = 0;
+        while (p < buf.length) {
+            int lengthByteSize = CodecUtil.decodeLengthSize(buf, p, buf.length);
+            int start = p + lengthByteSize;
+            p = start + (int) CodecUtil.decodeLengthValue(buf, p, lengthByteSize);
+            result.add(BKV.unpack(buf, start, p).getBKV());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<BKV> batch() {
+        return BKVBatch.scan(buf).decodeAll();
+    }
+
+    @Benchmark
+    public long batchStream() {
+        // count() alone would skip decoding the sized stream
+        return BKVBatch.scan(buf).stream().mapToInt(bkv -> bkv.getItems().size()).sum();
+    }
+}
@@ -0,0 +1,105 @@
+package com.dix.codec.bkv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BKVBenchmark {
+    @Param({ "1", "10", "100", "1000", "10000" })
+    int size;
+
+    @Param({ BenchmarkData.MIX_NUMBER, BenchmarkData.MIX_STRING, BenchmarkData.MIX_MIXED })
+    String mix;
+
+    BKV bkv;
+    BKV unpacked;
+    BKV reused = new BKV();
+    byte[] packed;
+    String[] stringKeys;
+    BKVKey[] bkvKeys;
+    long[] numberKeys;
+
+    @Setup
+    public void setup() throws IOException {
+        bkv = BenchmarkData.build(size, mix);
+        packed = bkv.pack();
+        unpacked = BKV.unpack(packed).getBKV();
+
+        Object[] keys = BenchmarkData.lookupKeys(size, mix, 5);
+        stringKeys = new String[keys.length];
+        bkvKeys = new BKVKey[keys.length];
+        numberKeys = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            // keys of the other type are looked up too, they miss and scan the whole frame
+            stringKeys[i] = keys[i] instanceof String ? (String) keys[i] : BenchmarkData.stringKey(i);
+            numberKeys[i] = keys[i] instanceof Long ? (Long) keys[i] : i;
+            bkvKeys[i] = BKVKey.of(stringKeys[i]);
+        }
+    }
+
+    @Benchmark
+    public byte[] pack() throws IOException {
+        return bkv.pack();
+    }
+
+    @Benchmark
+    public UnpackBKVResult unpack() {
+        return BKV.unpack(packed);
+    }
+
+    @Benchmark
+    public void getByStringKey(Blackhole blackhole) {
+        for (String key : stringKeys) {
+            blackhole.consume(unpacked.get(key));
+        }
+    }
+
+    @Benchmark
+    public void getByBKVKey(Blackhole blackhole) {
+        for (BKVKey key : bkvKeys) {
+            blackhole.consume(unpacked.get(key));
+        }
+    }
+
+    @Benchmark
+    public void getByNumberKey(Blackhole blackhole) {
+        for (long key : numberKeys) {
+            blackhole.consume(unpacked.get(key));
+        }
+    }
+
+    @Benchmark
+    public void unpackAndGet(Blackhole blackhole) {
+        BKV bkv = BKV.unpack(packed).getBKV();
+        for (long key : numberKeys) {
+            blackhole.consume(bkv.get(key));
+        }
+        for (String key : stringKeys) {
+            blackhole.consume(bkv.get(key));
+        }
+    }
+
+    @Benchmark
+    public BKV unpackInto() {
+        BKV.unpackInto(reused, packed);
+        return reused;
+    }
+}
@@ -0,0 +1,95 @@
+package com.dix.codec.bkv;
+
+import java.util.Random;
+
+/**
+ * Frames used by the benchmarks, built from a fixed seed so runs are comparable
+ */
+public class BenchmarkData {
+    public static final String MIX_NUMBER = "number";
+    public static final String MIX_STRING = "string";
+    public static final String MIX_MIXED = "mixed";
+
+    public static BKV build(int size, String mix) {
+        Random random = new Random(size);
+        BKV bkv = new BKV();
+        for (int i = 0; i < size; i++) {
+            switch (mix) {
+                case MIX_NUMBER:
+                    bkv.add(i, random.nextLong() >>> random.nextInt(64));
+                    break;
+
+                case MIX_STRING:
+                    bkv.add(stringKey(i), "value-" + random.nextInt());
+                    break;
+
+                case MIX_MIXED:
+                    addMixed(bkv, i, random);
+                    break;
+
+                default:
+                    throw new IllegalArgumentException("unknown mix: " + mix);
+            }
+        }
+        return bkv;
+    }
+
+    private static void addMixed(BKV bkv, int i, Random random) {
+        Object key = (i & 1) == 0 ? (Object) i : stringKey(i);
+        switch (i & 3) {
+            case 0: bkv.add(key, random.nextInt(1 << 16)); break;
+            case 1: bkv.add(key, random.nextFloat()); break;
+            case 2: bkv.add(key, "value-" + random.nextInt()); break;
+            default:
+                byte[] value = new byte[random.nextInt(64) + 1];
+                random.nextBytes(value);
+                bkv.add(key, value);
+        }
+    }
+
+    /**
+     * Millisecond timestamps of a 1 kHz stream with jitter, as sent by sensors
+     */
+    public static long[] timestamps(int size) {
+        Random random = new Random(size);
+        long[] values = new long[size];
+        long t = 1600000000000L;
+        for (int i = 0; i < size; i++) {
+            t += 1 + (random.nextInt(10) == 0 ? random.nextInt(3) : 0);
+            values[i] = t;
+        }
+        return values;
+    }
+
+    /**
+     * Monotonic byte counter sampled at a fixed interval, increments vary with the traffic
+     */
+    public static long[] counters(int size) {
+        Random random = new Random(-size);
+        long[] values = new long[size];
+        long c = 1L << 40;
+        for (int i = 0; i < size; i++) {
+            c += random.nextInt(1 << 16);
+            values[i] = c;
+        }
+        return values;
+    }
+
+    public static String stringKey(int i) {
+        return "key-" + i;
+    }
+
+    /**
+     * Keys present in a frame built by {@link #build(int, String)}, picked at random
+     */
+    public static Object[] lookupKeys(int size, String mix, int count) {
+        Random random = new Random(-size);
+        Object[] keys = new Object[count];
+        for (int i = 0; i < count; i++) {
+            int n = random.nextInt(size);
+            boolean isStringKey = MIX_STRING.equals(mix) || (MIX_MIXED.equals(mix) && (n & 1) == 1);
+            keys[i] = isStringKey ? (Object) stringKey(n) : (Object) (long) n;
+        }
+        return keys;
+    }
+}
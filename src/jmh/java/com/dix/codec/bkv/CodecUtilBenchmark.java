@@ -0,0 +1,62 @@
+package com.dix.codec.bkv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecUtilBenchmark {
+    // 1, 2, 4 and 8 bytes numbers, 1, 2, 3 and 4 bytes lengths
+    @Param({ "1", "2", "4", "8" })
+    int numberSize;
+
+    long number;
+    byte[] encodedNumber;
+    long length;
+    byte[] encodedLength;
+
+    @Setup
+    public void setup() {
+        number = numberSize == 8 ? -1L : (1L << (numberSize * 8 - 1)) + 1;
+        encodedNumber = CodecUtil.encodeNumber(number);
+
+        int lengthSize = Math.min(numberSize, 4);
+        length = (1L << (lengthSize * 7 - 1)) + 1;
+        encodedLength = CodecUtil.encodeLength(length);
+    }
+
+    @Benchmark
+    public byte[] encodeNumber() {
+        return CodecUtil.encodeNumber(number);
+    }
+
+    @Benchmark
+    public long decodeNumber() {
+        return CodecUtil.decodeNumber(encodedNumber);
+    }
+
+    @Benchmark
+    public byte[] encodeLength() {
+        return CodecUtil.encodeLength(length);
+    }
+
+    @Benchmark
+    public DecodeLengthResult decodeLength() {
+        return CodecUtil.decodeLength(encodedLength);
+    }
+}
@@ -0,0 +1,91 @@
+package com.dix.codec.bkv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number sequences packed as one kv per value, as a long[] value and as delta + zigzag varints,
+ * the packed sizes are printed at setup
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeltaBenchmark {
+    public static final String ENCODING_KV = "kv";
+    public static final String ENCODING_ARRAY = "array";
+    public static final String ENCODING_DELTA = "delta";
+
+    @Param({ "1000" })
+    int size;
+
+    @Param({ "timestamps", "counters" })
+    String data;
+
+    @Param({ ENCODING_KV, ENCODING_ARRAY, ENCODING_DELTA })
+    String encoding;
+
+    long[] values;
+    byte[] packed;
+
+    @Setup
+    public void setup() throws IOException {
+        values = "timestamps".equals(data) ? BenchmarkData.timestamps(size) : BenchmarkData.counters(size);
+        packed = pack();
+        System.out.printf("%n%s %s: %d bytes, %.2f bytes per value%n", data, encoding, packed.length, (double) packed.length / size);
+    }
+
+    @Benchmark
+    public byte[] pack() throws IOException {
+        BKV bkv = new BKV();
+        switch (encoding) {
+            case ENCODING_KV:
+                for (long v : values) {
+                    bkv.add(1, v);
+                }
+                break;
+
+            case ENCODING_ARRAY:
+                bkv.add(1, values);
+                break;
+
+            default:
+                bkv.addDeltaLongs(1, values);
+        }
+        return bkv.pack();
+    }
+
+    @Benchmark
+    public void unpack(Blackhole blackhole) {
+        BKVView view = BKVView.unpack(packed);
+        switch (encoding) {
+            case ENCODING_KV:
+                for (int i = 0, n = view.size(); i < n; i++) {
+                    blackhole.consume(CodecUtil.decodeNumber(packed, view.getValueOffset(i), view.getValueLength(i)));
+                }
+                break;
+
+            case ENCODING_ARRAY:
+                view.forEachLong(1, blackhole::consume);
+                break;
+
+            default:
+                view.forEachDeltaLong(1, blackhole::consume);
+        }
+    }
+}
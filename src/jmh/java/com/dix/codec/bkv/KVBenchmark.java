@@ -0,0 +1,53 @@
+package com.dix.codec.bkv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KVBenchmark {
+    @Param({ "1", "16", "256", "4096" })
+    int valueLength;
+
+    @Param({ "true", "false" })
+    boolean isStringKey;
+
+    KV kv;
+    byte[] packed;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] value = new byte[valueLength];
+        for (int i = 0; i < valueLength; i++) {
+            value[i] = (byte) i;
+        }
+        kv = isStringKey ? new KV("key", value) : new KV(0x1234, value);
+        packed = kv.pack();
+    }
+
+    @Benchmark
+    public byte[] pack() throws IOException {
+        return kv.pack();
+    }
+
+    @Benchmark
+    public UnpackKVResult unpack() {
+        return KV.unpack(packed);
+    }
+}
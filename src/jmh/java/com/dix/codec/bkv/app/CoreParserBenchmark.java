@@ -0,0 +1,61 @@
+package com.dix.codec.bkv.app;
+
+import com.dix.codec.bkv.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoreParserBenchmark {
+    // CoreParser reads the frame length as a signed byte, so large inputs are many small frames back to back
+    @Param({ "1", "10", "100", "1000" })
+    int frameCount;
+
+    @Param({ BenchmarkData.MIX_NUMBER, BenchmarkData.MIX_MIXED })
+    String mix;
+
+    byte[] buf;
+
+    @Setup
+    public void setup() throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < frameCount; i++) {
+            byte[] body = BenchmarkData.build(4, mix).pack();
+            stream.write(0xFF);
+            stream.write(body.length + 1);
+            stream.write(checksum(body));
+            stream.write(body);
+        }
+        buf = stream.toByteArray();
+    }
+
+    private static int checksum(byte[] body) {
+        int sum = 0;
+        for (byte b : body) {
+            sum += b & 0xFF;
+        }
+        return sum & 0xFF;
+    }
+
+    @Benchmark
+    public void parse() {
+        CoreParser.INSTANCE.parse(buf);
+    }
+}
@@ -1,18 +1,42 @@
 package com.dix.codec.bkv;
 
+import com.dix.codec.bkv.exception.InvalidKeyTypeException;
+import com.dix.codec.bkv.exception.PackKVFailException;
 import com.dix.codec.bkv.exception.UnpackKVFailException;
 import javax.annotation.Nullable;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
 
+/**
+ * List of kvs with lookups by key. Changes are not thread safe, a BKV no longer changed can be read from many threads
+ */
 public class BKV {
     private List<KV> kvs = new ArrayList<>();
+    private final List<KV> items = new Items();
+    // built on first lookup into a fresh object, so concurrent reads of a BKV no longer changed are safe
+    private volatile BKVIndex index;
+    // index dropped by unpackInto, its arrays are reused by the next build
+    private BKVIndex spare;
+
+    // reused by unpackInto, kv slots point into the arena
+    private KV[] slots;
+    // created once so refilling does not allocate
+    private CodecUtil.KVConsumer filler;
+    private byte[] arena;
 
     public void add(KV kv) {
         this.kvs.add(kv);
+        this.index = null;
     }
 
     public void add(Object key, Object value) {
@@ -23,19 +47,146 @@ public class BKV {
         this.add(kv);
     }
 
+    public void add(BKVKey key, Object value) {
+        this.add((Object) key, value);
+    }
+
+    /**
+     * Add values packed as zigzag mapped varint deltas of consecutive values, a few bytes per value for
+     * timestamps and counters instead of the 8 bytes of a long[], read back with {@link #getDeltaLongArray(long)}
+     */
+    public void addDeltaLongs(Object key, long[] values) {
+        this.add(new KV(key, CodecUtil.encodeDeltaLongArray(values)));
+    }
+
+    /**
+     * Add value with a compression flag, deflated if it has at least {@link ValueCompression#DEFAULT_THRESHOLD} bytes,
+     * read back with {@link #getDecompressedValue(long)}
+     */
+    public void addCompressed(Object key, byte[] value) {
+        this.add(new KV(key, ValueCompression.compress(value)));
+    }
+
+    public void addCompressed(Object key, byte[] value, int threshold) {
+        this.add(new KV(key, ValueCompression.compress(value, threshold)));
+    }
+
     public void add(BKV bkv) {
-        this.kvs.addAll(bkv.getItems());
+        this.kvs.addAll(bkv.kvs);
+        this.index = null;
     }
 
-    @Nullable
-    public KV get(String key) {
-        for (KV kv : kvs) {
-            if (kv.isStringKey() && kv.getStringKey().equals(key)) {
-                return kv;
+    /**
+     * Index of the first kv with the key, -1 if not found
+     */
+    public int indexOf(String key) {
+        byte[] keyBuf = key.getBytes(StandardCharsets.UTF_8);
+        BKVIndex index = index();
+        if (index != null) {
+            return index.indexOf(kvs, keyBuf);
+        }
+
+        for (int i = 0, size = kvs.size(); i < size; i++) {
+            KV kv = kvs.get(i);
+            if (kv.isStringKey() && kv.keyEquals(keyBuf)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Index of the first kv with the key, -1 if not found
+     */
+    public int indexOf(long key) {
+        BKVIndex index = index();
+        if (index != null) {
+            return index.indexOf(key);
+        }
+
+        for (int i = 0, size = kvs.size(); i < size; i++) {
+            KV kv = kvs.get(i);
+            if (kv.isNumberKeyDecodable() && kv.decodeNumberKey() == key) {
+                return i;
             }
         }
 
-        return null;
+        return -1;
+    }
+
+    /**
+     * Index of the first kv with the key, -1 if not found, bytes of string keys are compared without encoding
+     */
+    public int indexOf(BKVKey key) {
+        if (!key.isStringKey()) {
+            return indexOf(key.getNumberKey());
+        }
+
+        BKVIndex index = index();
+        if (index != null) {
+            return index.indexOf(kvs, key.bytes(), key.hash());
+        }
+
+        for (int i = 0, size = kvs.size(); i < size; i++) {
+            if (kvs.get(i).keyEquals(key)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Index of the next kv with the same key as the kv at index, -1 if not found
+     */
+    private int nextIndexOf(int index) {
+        BKVIndex bkvIndex = index();
+        if (bkvIndex != null) {
+            return bkvIndex.next(index);
+        }
+
+        KV kv = kvs.get(index);
+        boolean isStringKey = kv.isStringKey();
+        long numberKey = isStringKey ? 0 : kv.decodeNumberKey();
+        for (int i = index + 1, size = kvs.size(); i < size; i++) {
+            KV item = kvs.get(i);
+            if (isStringKey) {
+                if (item.isStringKey() && item.keyEquals(kv)) {
+                    return i;
+                }
+            } else if (item.isNumberKeyDecodable() && item.decodeNumberKey() == numberKey) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * The index is built on first lookup once there are enough kvs,
+     * it is dropped on add and on every change through {@link #getItems()}
+     */
+    @Nullable
+    private BKVIndex index() {
+        if (kvs.size() < BKVIndex.THRESHOLD) {
+            return null;
+        }
+
+        BKVIndex index = this.index;
+        if (index == null) {
+            index = BKVIndex.build(kvs, spare);
+            spare = null;
+            this.index = index;
+        }
+
+        return index;
+    }
+
+    @Nullable
+    public KV get(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : kvs.get(index);
     }
 
     @Nullable
@@ -45,13 +196,14 @@ public class BKV {
 
     @Nullable
     public KV get(long key) {
-        for (KV kv : kvs) {
-            if (!kv.isStringKey() && (kv.getNumberKey() == key)) {
-                return kv;
-            }
-        }
+        int index = indexOf(key);
+        return index < 0 ? null : kvs.get(index);
+    }
 
-        return null;
+    @Nullable
+    public KV get(BKVKey key) {
+        int index = indexOf(key);
+        return index < 0 ? null : kvs.get(index);
     }
 
     @Nullable
@@ -139,49 +291,421 @@ public class BKV {
         return kv.getBooleanValue();
     }
 
-    public List<Long> getNumberValueList(long key) {
-        List<Long> valueList = new ArrayList<>();
-        for (KV kv : kvs) {
-            if (!kv.isStringKey() && kv.getNumberKey().equals(key)) {
-                valueList.add(kv.getNumberValue());
-            }
+    @Nullable
+    public long[] getLongArray(long key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getLongArray();
+    }
+
+    @Nullable
+    public long[] getLongArray(String key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getLongArray();
+    }
+
+    @Nullable
+    public int[] getIntArray(long key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getIntArray();
+    }
+
+    @Nullable
+    public int[] getIntArray(String key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getIntArray();
+    }
+
+    @Nullable
+    public float[] getFloatArray(long key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getFloatArray();
+    }
+
+    @Nullable
+    public float[] getFloatArray(String key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getFloatArray();
+    }
+
+    @Nullable
+    public double[] getDoubleArray(long key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getDoubleArray();
+    }
+
+    @Nullable
+    public double[] getDoubleArray(String key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getDoubleArray();
+    }
+
+    /**
+     * Pass each long of the long[] value of the key to consumer, nothing is passed if the key is not found
+     */
+    public void forEachLong(long key, LongConsumer consumer) {
+        KV kv = get(key);
+        if (kv != null) {
+            kv.forEachLong(consumer);
+        }
+    }
+
+    public void forEachLong(String key, LongConsumer consumer) {
+        KV kv = get(key);
+        if (kv != null) {
+            kv.forEachLong(consumer);
+        }
+    }
+
+    public void forEachDouble(long key, DoubleConsumer consumer) {
+        KV kv = get(key);
+        if (kv != null) {
+            kv.forEachDouble(consumer);
+        }
+    }
+
+    public void forEachDouble(String key, DoubleConsumer consumer) {
+        KV kv = get(key);
+        if (kv != null) {
+            kv.forEachDouble(consumer);
+        }
+    }
+
+    @Nullable
+    public long[] getDeltaLongArray(long key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getDeltaLongArray();
+    }
+
+    @Nullable
+    public long[] getDeltaLongArray(String key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getDeltaLongArray();
+    }
+
+    public void forEachDeltaLong(long key, LongConsumer consumer) {
+        KV kv = get(key);
+        if (kv != null) {
+            kv.forEachDeltaLong(consumer);
+        }
+    }
+
+    public void forEachDeltaLong(String key, LongConsumer consumer) {
+        KV kv = get(key);
+        if (kv != null) {
+            kv.forEachDeltaLong(consumer);
         }
-        return valueList;
+    }
+
+    @Nullable
+    public byte[] getDecompressedValue(long key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getDecompressedValue();
+    }
+
+    @Nullable
+    public byte[] getDecompressedValue(String key) {
+        KV kv = get(key);
+        if (kv == null) {
+            return null;
+        }
+
+        return kv.getDecompressedValue();
+    }
+
+    public List<Long> getNumberValueList(long key) {
+        return getNumberValueList(indexOf(key));
     }
 
     public List<Long> getNumberValueList(String key) {
+        return getNumberValueList(indexOf(key));
+    }
+
+    private List<Long> getNumberValueList(int index) {
         List<Long> valueList = new ArrayList<>();
-        for (KV kv : kvs) {
-            if (kv.isStringKey() && kv.getStringKey().equals(key)) {
-                valueList.add(kv.getNumberValue());
-            }
+        for (int i = index; i >= 0; i = nextIndexOf(i)) {
+            valueList.add(kvs.get(i).getNumberValue());
         }
         return valueList;
     }
 
-    public List<KV> getItems() {
-        return kvs;
+    public long getLong(long key, long defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getLong();
     }
 
-    public boolean containsKey(Object key) {
-        Object validKey;
-        if (key instanceof Integer) {
-            validKey = ((Integer) key).longValue();
-        } else if (key instanceof Long || key instanceof String) {
-            validKey = key;
+    public long getLong(String key, long defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getLong();
+    }
+
+    public int getInt(long key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getInt();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getInt();
+    }
+
+    public float getFloat(long key, float defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getFloat();
+    }
+
+    public float getFloat(String key, float defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getFloat();
+    }
+
+    public double getDouble(long key, double defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getDouble();
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getDouble();
+    }
+
+    public boolean getBoolean(long key, boolean defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getBoolean();
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getBoolean();
+    }
+
+    public long getLong(BKVKey key, long defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getLong();
+    }
+
+    public int getInt(BKVKey key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getInt();
+    }
+
+    public float getFloat(BKVKey key, float defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getFloat();
+    }
+
+    public double getDouble(BKVKey key, double defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getDouble();
+    }
+
+    public boolean getBoolean(BKVKey key, boolean defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : kvs.get(index).getBoolean();
+    }
+
+    @Nullable
+    public String getStringValue(BKVKey key) {
+        int index = indexOf(key);
+        return index < 0 ? null : kvs.get(index).getStringValue();
+    }
+
+    /**
+     * Nested kvs packed in the value of the key, as a view over the value bytes, null if not found
+     */
+    @Nullable
+    public BKVView getBKVValue(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : kvs.get(index).getBKVValue();
+    }
+
+    @Nullable
+    public BKVView getBKVValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : kvs.get(index).getBKVValue();
+    }
+
+    @Nullable
+    public BKVView getBKVValue(BKVKey key) {
+        int index = indexOf(key);
+        return index < 0 ? null : kvs.get(index).getBKVValue();
+    }
+
+    /**
+     * Follow keys through nested bkv values, see {@link BKVView#path(Object...)}
+     */
+    @Nullable
+    public KV path(Object... keys) {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("empty path");
+        }
+
+        Object first = keys[0];
+        int index;
+        if (first instanceof Integer || first instanceof Long) {
+            index = indexOf(((Number) first).longValue());
+        } else if (first instanceof String) {
+            index = indexOf((String) first);
+        } else if (first instanceof BKVKey) {
+            index = indexOf((BKVKey) first);
         } else {
-            return false;
+            throw new InvalidKeyTypeException("unsupported key type: " + first.getClass().getSimpleName());
         }
 
-        for (KV kv : kvs) {
-            if (kv.getKey().equals(validKey)) {
-                return true;
-            }
+        if (index < 0) {
+            return null;
+        }
+
+        KV kv = kvs.get(index);
+        if (keys.length == 1) {
+            return kv;
+        }
+
+        return kv.getBKVValue().path(Arrays.copyOfRange(keys, 1, keys.length));
+    }
+
+    public LongList getLongList(long key) {
+        return getLongList(key, new LongList());
+    }
+
+    public LongList getLongList(String key) {
+        return getLongList(key, new LongList());
+    }
+
+    /**
+     * Append all number values of the key to list, the list is not cleared so it can be reused by caller
+     */
+    public LongList getLongList(long key, LongList list) {
+        return getLongList(indexOf(key), list);
+    }
+
+    public LongList getLongList(String key, LongList list) {
+        return getLongList(indexOf(key), list);
+    }
+
+    private LongList getLongList(int index, LongList list) {
+        for (int i = index; i >= 0; i = nextIndexOf(i)) {
+            list.add(kvs.get(i).getLong());
+        }
+        return list;
+    }
+
+    /**
+     * Live list of the kvs, changes through it are seen by lookups
+     */
+    public List<KV> getItems() {
+        return items;
+    }
+
+    /**
+     * Remove all kvs, the items list, kv slots and arena are kept for reuse
+     */
+    public void clear() {
+        this.kvs.clear();
+        this.index = null;
+    }
+
+    private void invalidateIndex() {
+        this.index = null;
+    }
+
+    /**
+     * View of kvs for {@link #getItems()}, every change invalidates the key index,
+     * bulk operations like sort and removeIf go through set and remove
+     */
+    private final class Items extends AbstractList<KV> implements RandomAccess {
+        @Override
+        public KV get(int index) {
+            return kvs.get(index);
+        }
+
+        @Override
+        public int size() {
+            return kvs.size();
+        }
+
+        @Override
+        public KV set(int index, KV kv) {
+            KV previous = kvs.set(index, kv);
+            invalidateIndex();
+            return previous;
+        }
+
+        @Override
+        public void add(int index, KV kv) {
+            kvs.add(index, kv);
+            modCount++;
+            invalidateIndex();
+        }
+
+        @Override
+        public KV remove(int index) {
+            KV previous = kvs.remove(index);
+            modCount++;
+            invalidateIndex();
+            return previous;
+        }
+    }
+
+    public boolean containsKey(Object key) {
+        if (key instanceof Integer || key instanceof Long) {
+            return indexOf(((Number) key).longValue()) >= 0;
+        } else if (key instanceof String) {
+            return indexOf((String) key) >= 0;
+        } else if (key instanceof BKVKey) {
+            return indexOf((BKVKey) key) >= 0;
         }
 
         return false;
     }
 
+    public boolean containsKey(BKVKey key) {
+        return indexOf(key) >= 0;
+    }
+
     public void dump() {
         for (KV kv : kvs) {
             if (kv.isStringKey()) {
@@ -193,36 +717,176 @@ public class BKV {
     }
 
     public byte[] pack() throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        for (KV kv : kvs) {
-            buffer.write(kv.pack());
+        byte[] buf = new byte[encodedSize()];
+        packTo(buf, 0);
+
+        return buf;
+    }
+
+    /**
+     * Count of bytes {@link #pack()} produces
+     */
+    public int encodedSize() {
+        int size = 0;
+        for (int i = 0, n = kvs.size(); i < n; i++) {
+            size += kvs.get(i).encodedSize();
+        }
+
+        return size;
+    }
+
+    /**
+     * Pack all kvs into dst at offset in one pass, returns the offset after the packed bytes
+     */
+    public int packTo(byte[] dst, int offset) throws PackKVFailException {
+        for (int i = 0, n = kvs.size(); i < n; i++) {
+            offset = kvs.get(i).packTo(dst, offset);
         }
 
-        return buffer.toByteArray();
+        return offset;
+    }
+
+    /**
+     * Pack all kvs into dst at its position, the position is advanced by the packed bytes
+     */
+    public void packTo(ByteBuffer dst) throws PackKVFailException {
+        for (int i = 0, n = kvs.size(); i < n; i++) {
+            kvs.get(i).packTo(dst);
+        }
     }
 
     public static UnpackBKVResult unpack(byte[] buf) {
+        if (buf == null) {
+            return new UnpackBKVResult(new BKV(), (byte[]) null, 0, 0);
+        }
+
+        return unpack(buf, 0, buf.length);
+    }
+
+    /**
+     * Unpack kvs from buf[offset, limit) with a single cursor, nothing but the keys and values is copied,
+     * the bytes failed to unpack start at {@link UnpackBKVResult#getOffset()}
+     */
+    public static UnpackBKVResult unpack(byte[] buf, int offset, int limit) {
+        CodecUtil.checkRange(buf, offset, limit);
+
         BKV bkv = new BKV();
         while (true) {
-            if (buf == null || buf.length == 0) {
-                return new UnpackBKVResult(bkv, null);
+            if (offset >= limit) {
+                return new UnpackBKVResult(bkv, buf, limit, limit);
             }
 
             try {
-                // System.out.println(String.format("unpacking: %s", CodecUtil.bytesToHex(buf)));
-                UnpackKVResult unpackKVResult = KV.unpack(buf);
+                UnpackKVResult unpackKVResult = KV.unpack(buf, offset, limit);
                 if (unpackKVResult == null) {
-                    return new UnpackBKVResult(bkv, null);
+                    return new UnpackBKVResult(bkv, buf, limit, limit);
                 }
                 if (unpackKVResult.getKV() != null) {
-                    KV kv = unpackKVResult.getKV();
-                    // System.out.println(String.format("%s -> %s", kv.getKey(), kv.getStringValue()));
-                    bkv.add(kv);
+                    bkv.add(unpackKVResult.getKV());
                 }
-                buf = unpackKVResult.getRemainingBuffer();
+                offset = unpackKVResult.getOffset();
             } catch (UnpackKVFailException e) {
-                return new UnpackBKVResult(bkv, buf);
+                return new UnpackBKVResult(bkv, buf, offset, limit);
+            }
+        }
+    }
+
+    /**
+     * Unpack kvs from the position to the limit of buf, works with heap and direct buffers,
+     * the position is advanced to the first byte failed to unpack
+     */
+    public static UnpackBKVResult unpack(ByteBuffer buf) {
+        BKV bkv = new BKV();
+        try {
+            while (true) {
+                UnpackKVResult unpackKVResult = KV.unpack(buf);
+                if (unpackKVResult == null) {
+                    break;
+                }
+                bkv.add(unpackKVResult.getKV());
             }
+        } catch (UnpackKVFailException e) {
+            // remaining bytes start at the position
+        }
+
+        return new UnpackBKVResult(bkv, buf, buf.position(), buf.limit());
+    }
+
+    public static int unpackInto(BKV target, byte[] buf) {
+        return unpackInto(target, buf, 0, buf.length);
+    }
+
+    /**
+     * Clear target and refill it with the kvs of buf[offset, limit), nothing is allocated once target is warmed up:
+     * the bytes are copied into the arena of target and its kvs are reused slots pointing into the arena,
+     * so kvs got from target before are overwritten, and the key index is rebuilt in place on the next lookup,
+     * so target must not be read by other threads while it is refilled. Returns the offset of the first byte failed to unpack
+     */
+    public static int unpackInto(BKV target, byte[] buf, int offset, int limit) {
+        CodecUtil.checkRange(buf, offset, limit);
+
+        int length = limit - offset;
+        System.arraycopy(buf, offset, target.reset(length), 0, length);
+        return offset + target.fill(length);
+    }
+
+    /**
+     * Same as {@link #unpackInto(BKV, byte[], int, int)} for the bytes from the position to the limit of buf,
+     * the position is advanced to the first byte failed to unpack
+     */
+    public static void unpackInto(BKV target, ByteBuffer buf) {
+        int position = buf.position();
+        int length = buf.remaining();
+        buf.get(target.reset(length), 0, length);
+        ((Buffer) buf).position(position + target.fill(length));
+    }
+
+    /**
+     * Clear kvs and return an arena of at least length bytes, the arrays of the key index are kept for reuse
+     */
+    private byte[] reset(int length) {
+        if (this.index != null) {
+            this.spare = this.index;
+        }
+        clear();
+        if (this.arena == null || this.arena.length < length) {
+            this.arena = new byte[Math.max(length, this.arena == null ? 0 : this.arena.length << 1)];
+        }
+
+        return this.arena;
+    }
+
+    /**
+     * Unpack arena[0, limit) into kv slots, returns the offset of the first byte failed to unpack
+     */
+    private int fill(int limit) {
+        if (this.filler == null) {
+            this.filler = this::append;
+        }
+
+        return CodecUtil.forEachKV(this.arena, 0, limit, this.filler);
+    }
+
+    private void append(int keyLengthByte, int keyOffset, int valueLength) {
+        int keyLength = keyLengthByte & 0x7F;
+        KV kv = slot(this.kvs.size());
+        kv.set(this.arena, (keyLengthByte & 0x80) != 0, keyOffset, keyLength, keyOffset + keyLength, valueLength);
+        this.kvs.add(kv);
+    }
+
+    private KV slot(int i) {
+        if (this.slots == null) {
+            this.slots = new KV[16];
+        } else if (i == this.slots.length) {
+            this.slots = Arrays.copyOf(this.slots, i << 1);
         }
+
+        KV kv = this.slots[i];
+        if (kv == null) {
+            kv = new KV();
+            this.slots[i] = kv;
+        }
+
+        return kv;
     }
 }
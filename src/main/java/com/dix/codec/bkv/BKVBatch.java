@@ -0,0 +1,307 @@
+package com.dix.codec.bkv;
+
+import com.dix.codec.bkv.app.FrameDecoder;
+import com.dix.codec.bkv.exception.InvalidLengthException;
+import javax.annotation.Nullable;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Frames of a large buffer of concatenated {@code length | packed BKV} records, the record layout of segment files,
+ * decoded in parallel.
+ * <p>
+ * {@link #scan(byte[], int, int)} finds the frame boundaries by jumping from length to length without unpacking,
+ * then frames are unpacked in chunks of about the same byte size on a {@link ForkJoinPool} or an executor,
+ * results keep the order of the frames.
+ * Captures of {@code 0xFF | length | checksum | BKV} frames, e.g. replays of a connection,
+ * are scanned with {@link #scanFrames(byte[], int, int)}.
+ * <pre>
+ * List&lt;BKV&gt; frames = BKVBatch.scan(buf).decodeAll();
+ * BKVBatch.scan(buf).stream().filter(...).forEachOrdered(...);
+ * </pre>
+ */
+public final class BKVBatch {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Chunks per worker, more chunks even out frames of uneven sizes
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final byte[] buf;
+    private final ByteBuffer nioBuf;
+    private final int[] starts;
+    private final int[] ends;
+    private final int size;
+    private final int end;
+
+    private BKVBatch(byte[] buf, ByteBuffer nioBuf, int[] starts, int[] ends, int size, int end) {
+        this.buf = buf;
+        this.nioBuf = nioBuf;
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+        this.end = end;
+    }
+
+    public static BKVBatch scan(byte[] buf) {
+        return scan(buf, 0, buf.length);
+    }
+
+    /**
+     * Find the frames in buf[offset, limit), scanning stops at a zero length byte, the end marker of segments,
+     * or at a frame cut off by limit, see {@link #getEnd()}
+     */
+    public static BKVBatch scan(byte[] buf, int offset, int limit) {
+        CodecUtil.checkRange(buf, offset, limit);
+        return scan(buf, ByteBuffer.wrap(buf), offset, limit);
+    }
+
+    /**
+     * Find the frames from the position to the limit of buf, e.g. a mapped segment, see {@link #scan(byte[], int, int)}.
+     * Position and limit of buf are not changed, positions of the frames are absolute
+     */
+    public static BKVBatch scan(ByteBuffer buf) {
+        return scan(null, buf.duplicate(), buf.position(), buf.limit());
+    }
+
+    public static BKVBatch scanFrames(byte[] buf) {
+        return scanFrames(buf, 0, buf.length);
+    }
+
+    /**
+     * Find the {@code 0xFF | length | checksum | BKV} frames in buf[offset, limit) with the length and checksum checks
+     * of {@link FrameDecoder}, bytes before a head and frames failing the checks are skipped.
+     * Scanning stops at a frame cut off by limit, see {@link #getEnd()}. Only the BKVs are decoded
+     */
+    public static BKVBatch scanFrames(byte[] buf, int offset, int limit) {
+        CodecUtil.checkRange(buf, offset, limit);
+
+        int[] starts = new int[INITIAL_CAPACITY];
+        int[] ends = new int[INITIAL_CAPACITY];
+        int size = 0;
+        int p = offset;
+        while (p < limit) {
+            if (buf[p] != FrameDecoder.Head) {
+                p++;
+                continue;
+            }
+
+            int frameEnd = FrameDecoder.checkFrame(buf, p, limit);
+            if (frameEnd == FrameDecoder.Incomplete) {
+                break;
+            }
+            if (frameEnd < 0) {
+                p++;
+                continue;
+            }
+
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = p + 3;
+            ends[size++] = frameEnd;
+            p = frameEnd;
+        }
+
+        return new BKVBatch(buf, null, starts, ends, size, p);
+    }
+
+    /**
+     * Boundary scan of both overloads, bytes is buf wrapped or the buffer scanned, frames are unpacked from buf if set
+     */
+    private static BKVBatch scan(@Nullable byte[] buf, ByteBuffer bytes, int offset, int limit) {
+        int[] starts = new int[INITIAL_CAPACITY];
+        int[] ends = new int[INITIAL_CAPACITY];
+        int size = 0;
+        int p = offset;
+        while (p < limit && bytes.get(p) != 0) {
+            int lengthByteSize;
+            try {
+                lengthByteSize = CodecUtil.decodeLengthSize(bytes, p, limit);
+            } catch (InvalidLengthException e) {
+                break;
+            }
+            if (bytes.get(p + lengthByteSize - 1) < 0) {
+                break;
+            }
+
+            long length = CodecUtil.decodeLengthValue(bytes, p, lengthByteSize);
+            int start = p + lengthByteSize;
+            if (limit - start < length) {
+                break;
+            }
+
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            p = start + (int) length;
+            ends[size++] = p;
+        }
+
+        return new BKVBatch(buf, buf == null ? bytes : null, starts, ends, size, p);
+    }
+
+    /**
+     * Count of frames found
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Offset after the last frame found, bytes from here on are the end marker or an incomplete frame,
+     * limit if {@link #scanFrames(byte[], int, int)} consumed all bytes
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public BKV decode(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("index=%d, size=%d", index, size));
+        }
+
+        if (nioBuf == null) {
+            return BKV.unpack(buf, starts[index], ends[index]).getBKV();
+        }
+
+        ByteBuffer src = nioBuf.duplicate();
+        ((Buffer) src).limit(ends[index]).position(starts[index]);
+        return BKV.unpack(src).getBKV();
+    }
+
+    /**
+     * Decode all frames on the common {@link ForkJoinPool}
+     */
+    public List<BKV> decodeAll() {
+        return decodeAll(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Decode all frames in chunks on executor, parallelism is the count of threads of executor
+     */
+    public List<BKV> decodeAll(Executor executor, int parallelism) {
+        BKV[] results = new BKV[size];
+        int[] chunkEnds = chunks(Math.max(1, parallelism) * CHUNKS_PER_THREAD);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunkEnds.length];
+        int from = 0;
+        for (int i = 0; i < chunkEnds.length; i++) {
+            int chunkFrom = from;
+            int chunkTo = chunkEnds[i];
+            futures[i] = CompletableFuture.runAsync(() -> {
+                for (int j = chunkFrom; j < chunkTo; j++) {
+                    results[j] = decode(j);
+                }
+            }, executor);
+            from = chunkTo;
+        }
+
+        CompletableFuture.allOf(futures).join();
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Parallel stream of the decoded frames, ordered, e.g. forEachOrdered and collect keep the order of the frames
+     */
+    public Stream<BKV> stream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public Spliterator<BKV> spliterator() {
+        return new FrameSpliterator(0, size);
+    }
+
+    /**
+     * Split the frames into at most count chunks of about the same byte size, returns the end index of every chunk
+     */
+    private int[] chunks(int count) {
+        if (size == 0) {
+            return new int[0];
+        }
+
+        long total = ends[size - 1] - starts[0];
+        long target = Math.max(1, total / count);
+        int[] chunkEnds = new int[Math.min(count, size)];
+        int n = 0;
+        long chunkStart = starts[0];
+        for (int i = 0; i < size - 1 && n < chunkEnds.length - 1; i++) {
+            if (ends[i] - chunkStart >= target) {
+                chunkEnds[n++] = i + 1;
+                chunkStart = ends[i];
+            }
+        }
+        chunkEnds[n++] = size;
+
+        return Arrays.copyOf(chunkEnds, n);
+    }
+
+    /**
+     * Splits the frame range in halves of about the same byte size
+     */
+    private final class FrameSpliterator implements Spliterator<BKV> {
+        private int index;
+        private final int fence;
+
+        FrameSpliterator(int index, int fence) {
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super BKV> action) {
+            if (index >= fence) {
+                return false;
+            }
+
+            action.accept(decode(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super BKV> action) {
+            for (; index < fence; index++) {
+                action.accept(decode(index));
+            }
+        }
+
+        @Override
+        public Spliterator<BKV> trySplit() {
+            if (fence - index < 2) {
+                return null;
+            }
+
+            int middle = starts[index] + (ends[fence - 1] - starts[index]) / 2;
+            int split = Arrays.binarySearch(ends, index, fence - 1, middle);
+            split = split < 0 ? -split - 1 : split;
+            split = Math.max(index + 1, Math.min(split + 1, fence - 1));
+
+            FrameSpliterator prefix = new FrameSpliterator(index, split);
+            index = split;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.dix.codec.bkv;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Key index of a {@link BKV}, maps number keys and raw string key bytes to the index of the first kv,
+ * kvs with the same key are chained in insertion order through {@link #next(int)}.
+ */
+final class BKVIndex {
+    /**
+     * Kvs count from which lookups go through the index instead of a linear scan
+     */
+    static final int THRESHOLD = 8;
+
+    private final int[] next;
+
+    private final int mask;
+    private final long[] numberKeys;
+    private final int[] numberHeads; // first index + 1, 0 for empty slot
+    private final int[] numberTails;
+    private final int[] stringHashes;
+    private final int[] stringHeads; // first index + 1, 0 for empty slot
+    private final int[] stringTails;
+
+    private BKVIndex(int size) {
+        this.next = new int[size];
+
+        int capacity = capacity(size);
+        this.mask = capacity - 1;
+        this.numberKeys = new long[capacity];
+        this.numberHeads = new int[capacity];
+        this.numberTails = new int[capacity];
+        this.stringHashes = new int[capacity];
+        this.stringHeads = new int[capacity];
+        this.stringTails = new int[capacity];
+    }
+
+    private static int capacity(int size) {
+        return Integer.highestOneBit(Math.max(size, 2) * 2 - 1) << 1;
+    }
+
+    static BKVIndex build(List<KV> kvs) {
+        return build(kvs, null);
+    }
+
+    /**
+     * Build the index of kvs, the arrays of previous are reused if they are large enough,
+     * previous must not be reachable by other threads
+     */
+    static BKVIndex build(List<KV> kvs, @Nullable BKVIndex previous) {
+        int size = kvs.size();
+        BKVIndex index;
+        if (previous != null && previous.next.length >= size && previous.numberHeads.length >= capacity(size)) {
+            index = previous;
+            Arrays.fill(index.numberHeads, 0);
+            Arrays.fill(index.stringHeads, 0);
+        } else {
+            index = new BKVIndex(size);
+        }
+        Arrays.fill(index.next, 0, size, -1);
+        int[] numberTails = index.numberTails;
+        int[] stringTails = index.stringTails;
+
+        for (int i = 0; i < size; i++) {
+            KV kv = kvs.get(i);
+            int slot;
+            int[] heads;
+            int[] tails;
+            if (kv.isStringKey()) {
+                int hash = kv.keyHashCode();
+                slot = index.findStringSlot(kvs, hash, kv);
+                heads = index.stringHeads;
+                tails = stringTails;
+                index.stringHashes[slot] = hash;
+            } else if (kv.isNumberKeyDecodable()) {
+                long key = kv.decodeNumberKey();
+                slot = index.findNumberSlot(key);
+                heads = index.numberHeads;
+                tails = numberTails;
+                index.numberKeys[slot] = key;
+            } else {
+                continue;
+            }
+
+            if (heads[slot] == 0) {
+                heads[slot] = i + 1;
+            } else {
+                index.next[tails[slot]] = i;
+            }
+            tails[slot] = i;
+        }
+
+        return index;
+    }
+
+    int indexOf(long key) {
+        return numberHeads[findNumberSlot(key)] - 1;
+    }
+
+    int indexOf(List<KV> kvs, byte[] key) {
+        return indexOf(kvs, key, hash(key, 0, key.length));
+    }
+
+    int indexOf(List<KV> kvs, byte[] key, int hash) {
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int head = stringHeads[slot];
+            if (head == 0) {
+                return -1;
+            }
+            if (stringHashes[slot] == hash && kvs.get(head - 1).keyEquals(key)) {
+                return head - 1;
+            }
+        }
+    }
+
+    /**
+     * Index of the next kv with the same key, -1 if none
+     */
+    int next(int index) {
+        return next[index];
+    }
+
+    private int findNumberSlot(long key) {
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (numberHeads[slot] == 0 || numberKeys[slot] == key) {
+                return slot;
+            }
+        }
+    }
+
+    private int findStringSlot(List<KV> kvs, int hash, KV kv) {
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int head = stringHeads[slot];
+            if (head == 0) {
+                return slot;
+            }
+            if (stringHashes[slot] == hash && kvs.get(head - 1).keyEquals(kv)) {
+                return slot;
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    static int hash(byte[] buf, int offset, int length) {
+        int h = 0x811C9DC5;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h ^= buf[i];
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
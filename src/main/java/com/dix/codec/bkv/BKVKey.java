@@ -0,0 +1,104 @@
+package com.dix.codec.bkv;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Precompiled key, holds the encoded key bytes and their hash so lookups compare bytes directly.
+ * String keys are encoded in UTF-8 and interned, keep instances in constants for keys looked up repeatedly.
+ */
+public final class BKVKey {
+    private static final ConcurrentMap<String, BKVKey> stringKeys = new ConcurrentHashMap<>();
+    private static final BKVKey[] smallNumberKeys = new BKVKey[256];
+    static {
+        for (int i = 0; i < smallNumberKeys.length; i++) {
+            smallNumberKeys[i] = new BKVKey(i);
+        }
+    }
+
+    private final boolean isStringKey;
+    private final byte[] bytes;
+    private final int hash;
+    private final long numberKey;
+    private final String stringKey;
+
+    private BKVKey(String key) {
+        this.isStringKey = true;
+        this.bytes = key.getBytes(StandardCharsets.UTF_8);
+        this.hash = BKVIndex.hash(this.bytes, 0, this.bytes.length);
+        this.numberKey = 0;
+        this.stringKey = key;
+    }
+
+    private BKVKey(long key) {
+        this.isStringKey = false;
+        this.bytes = CodecUtil.encodeNumber(key);
+        this.hash = BKVIndex.hash(this.bytes, 0, this.bytes.length);
+        this.numberKey = key;
+        this.stringKey = null;
+    }
+
+    public static BKVKey of(String key) {
+        BKVKey bkvKey = stringKeys.get(key);
+        if (bkvKey == null) {
+            bkvKey = stringKeys.computeIfAbsent(key, BKVKey::new);
+        }
+
+        return bkvKey;
+    }
+
+    public static BKVKey of(long key) {
+        if (key >= 0 && key < smallNumberKeys.length) {
+            return smallNumberKeys[(int) key];
+        }
+
+        return new BKVKey(key);
+    }
+
+    public boolean isStringKey() {
+        return isStringKey;
+    }
+
+    public long getNumberKey() {
+        return numberKey;
+    }
+
+    public String getStringKey() {
+        return stringKey;
+    }
+
+    /**
+     * Encoded key bytes, must not be modified
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int hash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BKVKey)) {
+            return false;
+        }
+
+        BKVKey other = (BKVKey) o;
+        return isStringKey == other.isStringKey && (isStringKey ? stringKey.equals(other.stringKey) : numberKey == other.numberKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return isStringKey ? stringKey : Long.toString(numberKey);
+    }
+}
@@ -0,0 +1,364 @@
+package com.dix.codec.bkv;
+
+import com.dix.codec.bkv.exception.InvalidLengthException;
+import com.dix.codec.bkv.exception.InvalidValueTypeException;
+import com.dix.codec.bkv.exception.UnpackKVFailException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Pull parser visiting kvs one by one without building {@link KV} or {@link BKV} objects.
+ * <p>
+ * {@link #next()} moves to the next kv, its key is read right away and its value is read on demand with one of
+ * the read methods, skipped with {@link #skipValue()}, or skipped by the following {@link #next()}.
+ * Values of streams are never buffered as a whole unless read with {@link #readValue()}, so frames larger than
+ * memory can be filtered or forwarded with {@link #transferTo(BKVWriter)}.
+ * <pre>
+ * BKVReader reader = BKVReader.of(in);
+ * while (reader.next()) {
+ *     if (reader.keyEquals(ID)) {
+ *         long id = reader.readLong();
+ *     }
+ * }
+ * </pre>
+ * A reader is not thread safe.
+ */
+public final class BKVReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final ByteBuffer src;
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+
+    private final byte[] key = new byte[0x7F];
+    private int keyLength;
+    private boolean isStringKey;
+    private boolean hasEntry;
+    private int valueLength;
+    private int valueRemaining;
+    private byte[] scratch;
+
+    private BKVReader(InputStream in, ByteBuffer src, byte[] buf, int pos, int limit) {
+        this.in = in;
+        this.src = src;
+        this.buf = buf;
+        this.pos = pos;
+        this.limit = limit;
+    }
+
+    public static BKVReader of(byte[] buf) {
+        return of(buf, 0, buf.length);
+    }
+
+    public static BKVReader of(byte[] buf, int offset, int limit) {
+        CodecUtil.checkRange(buf, offset, limit);
+        return new BKVReader(null, null, buf, offset, limit);
+    }
+
+    /**
+     * Reader of the bytes from the position to the limit of buf, position and limit of buf are not changed
+     */
+    public static BKVReader of(ByteBuffer buf) {
+        if (buf.hasArray()) {
+            int offset = buf.arrayOffset();
+            return new BKVReader(null, null, buf.array(), offset + buf.position(), offset + buf.limit());
+        }
+
+        return new BKVReader(null, buf.duplicate(), new byte[Math.min(BUFFER_SIZE, buf.remaining())], 0, 0);
+    }
+
+    /**
+     * Reader of all bytes of in, in is read in chunks and not closed
+     */
+    public static BKVReader of(InputStream in) {
+        return new BKVReader(in, null, new byte[BUFFER_SIZE], 0, 0);
+    }
+
+    /**
+     * Move to the next kv, the unread value of the current kv is skipped. Returns false at the end of the input,
+     * a kv cut off by the end of the input throws {@link UnpackKVFailException}
+     */
+    public boolean next() throws IOException {
+        if (hasEntry) {
+            skipValue();
+            hasEntry = false;
+        }
+
+        if (pos == limit && fill() <= 0) {
+            return false;
+        }
+
+        long totalLength = readLength();
+        int keyLengthByte = readByte();
+        int keyLength = keyLengthByte & 0x7F;
+        if (keyLength + 1 > totalLength) {
+            throw new UnpackKVFailException(String.format("key too long, keyLength=%d, length=%d", keyLength, totalLength));
+        }
+
+        readFully(key, 0, keyLength);
+        this.keyLength = keyLength;
+        this.isStringKey = (keyLengthByte & 0x80) != 0;
+        this.valueLength = (int) totalLength - 1 - keyLength;
+        this.valueRemaining = this.valueLength;
+        this.hasEntry = true;
+        return true;
+    }
+
+    public boolean isStringKey() {
+        checkEntry();
+        return isStringKey;
+    }
+
+    public long numberKey() {
+        checkEntry();
+        return CodecUtil.decodeNumber(key, 0, keyLength);
+    }
+
+    public String stringKey() {
+        checkEntry();
+        return new String(key, 0, keyLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare the encoded key bytes, number keys are compared with {@link CodecUtil#encodeNumber(long)} bytes
+     */
+    public boolean keyEquals(byte[] key) {
+        checkEntry();
+        if (key.length != keyLength) {
+            return false;
+        }
+
+        for (int i = 0; i < keyLength; i++) {
+            if (this.key[i] != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean keyEquals(BKVKey key) {
+        checkEntry();
+        return isStringKey == key.isStringKey() && keyEquals(key.bytes());
+    }
+
+    public int valueLength() {
+        checkEntry();
+        return valueLength;
+    }
+
+    public long readLong() throws IOException {
+        int length = startValue();
+        if (length > 8) {
+            throw new InvalidValueTypeException();
+        }
+
+        return readBits(length);
+    }
+
+    public int readInt() throws IOException {
+        return (int) readLong();
+    }
+
+    public boolean readBoolean() throws IOException {
+        long v = readLong();
+        if (v == 0) {
+            return false;
+        } else if (v == 1) {
+            return true;
+        }
+        throw new InvalidValueTypeException();
+    }
+
+    public float readFloat() throws IOException {
+        if (startValue() < 4) {
+            throw new InvalidValueTypeException();
+        }
+
+        float f = Float.intBitsToFloat((int) readBits(4));
+        skipValue();
+        return f;
+    }
+
+    /**
+     * Double value packed in 8 bytes, float value packed in 4 bytes is widened
+     */
+    public double readDouble() throws IOException {
+        switch (startValue()) {
+            case 8: return Double.longBitsToDouble(readBits(8));
+            case 4: return Float.intBitsToFloat((int) readBits(4));
+            default: throw new InvalidValueTypeException();
+        }
+    }
+
+    public String readString() throws IOException {
+        return new String(readValue(), StandardCharsets.UTF_8);
+    }
+
+    public byte[] readValue() throws IOException {
+        byte[] value = new byte[startValue()];
+        readFully(value, 0, value.length);
+        valueRemaining = 0;
+        return value;
+    }
+
+    /**
+     * Read up to length bytes of the value into dst at offset, returns the count of bytes read, -1 at the end of
+     * the value. Values are read in chunks this way without holding them in memory
+     */
+    public int readValue(byte[] dst, int offset, int length) throws IOException {
+        checkEntry();
+        if (valueRemaining == 0) {
+            return -1;
+        }
+
+        if (pos == limit && fill() <= 0) {
+            throw new UnpackKVFailException("value cut off");
+        }
+
+        int n = Math.min(Math.min(length, valueRemaining), limit - pos);
+        System.arraycopy(buf, pos, dst, offset, n);
+        pos += n;
+        valueRemaining -= n;
+        return n;
+    }
+
+    /**
+     * Skip the rest of the value, streams are skipped without reading the value into memory
+     */
+    public void skipValue() throws IOException {
+        checkEntry();
+        int buffered = Math.min(valueRemaining, limit - pos);
+        pos += buffered;
+        valueRemaining -= buffered;
+
+        while (valueRemaining > 0) {
+            long skipped = in != null ? in.skip(valueRemaining) : 0;
+            if (skipped > 0) {
+                valueRemaining -= (int) skipped;
+                continue;
+            }
+
+            if (fill() <= 0) {
+                throw new UnpackKVFailException("value cut off");
+            }
+            int n = Math.min(valueRemaining, limit - pos);
+            pos += n;
+            valueRemaining -= n;
+        }
+    }
+
+    /**
+     * Write the current kv if its value is not read yet, and all kvs after it to writer as they are,
+     * for routers forwarding the rest of a frame once a key is seen
+     */
+    public void transferTo(BKVWriter writer) throws IOException {
+        if (hasEntry && valueRemaining == valueLength) {
+            writer.writeHeader(isStringKey, key, keyLength, valueLength);
+            if (scratch == null) {
+                scratch = new byte[BUFFER_SIZE];
+            }
+            for (int n; (n = readValue(scratch, 0, scratch.length)) >= 0; ) {
+                writer.writeRaw(scratch, 0, n);
+            }
+        } else if (hasEntry) {
+            skipValue();
+        }
+        hasEntry = false;
+
+        do {
+            writer.writeRaw(buf, pos, limit - pos);
+            pos = limit;
+        } while (fill() > 0);
+    }
+
+    private int startValue() {
+        checkEntry();
+        if (valueRemaining != valueLength) {
+            throw new IllegalStateException("value already read");
+        }
+        return valueLength;
+    }
+
+    /**
+     * Big-endian number of the next n bytes of the value
+     */
+    private long readBits(int n) throws IOException {
+        long bits = 0;
+        for (int i = 0; i < n; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        valueRemaining -= n;
+        return bits;
+    }
+
+    private void checkEntry() {
+        if (!hasEntry) {
+            throw new IllegalStateException("no current kv, call next() first");
+        }
+    }
+
+    /**
+     * Length encoded by {@link CodecUtil#encodeLength(long)}, at most 4 bytes
+     */
+    private long readLength() throws IOException {
+        long n = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = readByte();
+            n = (n << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+        }
+
+        throw new InvalidLengthException();
+    }
+
+    private int readByte() throws IOException {
+        if (pos == limit && fill() <= 0) {
+            throw new UnpackKVFailException("kv cut off");
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private void readFully(byte[] dst, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (pos == limit && fill() <= 0) {
+                throw new UnpackKVFailException("kv cut off");
+            }
+
+            int n = Math.min(length, limit - pos);
+            System.arraycopy(buf, pos, dst, offset, n);
+            pos += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Refill the empty window from the source, returns the count of bytes read, -1 at the end of the input
+     */
+    private int fill() throws IOException {
+        int n;
+        if (in != null) {
+            n = in.read(buf, 0, buf.length);
+        } else if (src != null && src.hasRemaining()) {
+            n = Math.min(buf.length, src.remaining());
+            src.get(buf, 0, n);
+        } else {
+            return -1;
+        }
+
+        if (n < 0) {
+            return -1;
+        }
+        pos = 0;
+        limit = n;
+        return n;
+    }
+}
@@ -0,0 +1,656 @@
+package com.dix.codec.bkv;
+
+import com.dix.codec.bkv.exception.InvalidKeyTypeException;
+import com.dix.codec.bkv.exception.InvalidValueTypeException;
+
+import javax.annotation.Nullable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Read-only view over packed kvs, only the entry boundaries are indexed when unpacking,
+ * keys and values are decoded from the backing buffer on demand.
+ * The backing buffer is not copied, it must not be modified while the view is in use.
+ * A view unpacked from a {@link ByteBuffer} reads with absolute gets, so direct and read-only buffers work too,
+ * offsets are then absolute indexes of that buffer.
+ */
+public class BKVView {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final byte[] buf;
+    private final ByteBuffer nioBuf;
+    private int size;
+    private int[] keyOffsets;
+    private int[] keyLengthBytes; // key length with string flag, same as the wire format
+    private int[] valueLengths;
+    private int offset;
+    private int limit;
+
+    private BKVView(byte[] buf, ByteBuffer nioBuf) {
+        this.buf = buf;
+        this.nioBuf = nioBuf;
+        this.keyOffsets = new int[INITIAL_CAPACITY];
+        this.keyLengthBytes = new int[INITIAL_CAPACITY];
+        this.valueLengths = new int[INITIAL_CAPACITY];
+    }
+
+    public static BKVView unpack(byte[] buf) {
+        return unpack(buf, 0, buf.length);
+    }
+
+    /**
+     * Index kvs in buf[offset, limit), stops at the first kv failed to unpack,
+     * which starts at {@link #getOffset()}
+     */
+    public static BKVView unpack(byte[] buf, int offset, int limit) {
+        CodecUtil.checkRange(buf, offset, limit);
+
+        BKVView view = new BKVView(buf, null);
+        view.limit = limit;
+        view.offset = CodecUtil.forEachKV(buf, offset, limit, view::append);
+
+        return view;
+    }
+
+    /**
+     * Index kvs from the position to the limit of buf, the position is advanced to {@link #getOffset()}
+     */
+    public static BKVView unpack(ByteBuffer buf) {
+        int offset = buf.position();
+        int limit = buf.limit();
+
+        BKVView view = new BKVView(null, buf.duplicate());
+        view.limit = limit;
+        view.offset = CodecUtil.forEachKV(buf, offset, limit, view::append);
+        ((Buffer) buf).position(view.offset);
+
+        return view;
+    }
+
+    private void append(int keyLengthByte, int keyOffset, int valueLength) {
+        if (size == keyOffsets.length) {
+            int capacity = size << 1;
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengthBytes = Arrays.copyOf(keyLengthBytes, capacity);
+            valueLengths = Arrays.copyOf(valueLengths, capacity);
+        }
+
+        keyOffsets[size] = keyOffset;
+        keyLengthBytes[size] = keyLengthByte;
+        valueLengths[size] = valueLength;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Offset of the first byte not indexed, equals to {@link #getLimit()} when all bytes are unpacked
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean isStringKey(int index) {
+        checkIndex(index);
+        return (keyLengthBytes[index] & 0x80) != 0;
+    }
+
+    public long getNumberKey(int index) {
+        checkIndex(index);
+        return decodeNumber(keyOffsets[index], keyLength(index));
+    }
+
+    public String getStringKey(int index) {
+        checkIndex(index);
+        return decodeString(keyOffsets[index], keyLength(index));
+    }
+
+    public Object getKey(int index) {
+        if (isStringKey(index)) {
+            return getStringKey(index);
+        }
+
+        return getNumberKey(index);
+    }
+
+    public byte[] getValue(int index) {
+        checkIndex(index);
+        return copyOfRange(valueOffset(index), valueLengths[index]);
+    }
+
+    /**
+     * Value bytes of the kv at index without copying, the returned buffer is read-only
+     */
+    public ByteBuffer getValueBuffer(int index) {
+        checkIndex(index);
+        return valueView(index).slice().asReadOnlyBuffer();
+    }
+
+    public int getValueOffset(int index) {
+        checkIndex(index);
+        return valueOffset(index);
+    }
+
+    public int getValueLength(int index) {
+        checkIndex(index);
+        return valueLengths[index];
+    }
+
+    public KV getByIndex(int index) {
+        checkIndex(index);
+        byte[] key = copyOfRange(keyOffsets[index], keyLength(index));
+        return new KV(key, isStringKey(index), getValue(index));
+    }
+
+    public int indexOf(long key) {
+        for (int i = 0; i < size; i++) {
+            if ((keyLengthBytes[i] & 0x80) == 0 && keyLength(i) <= 8
+                    && decodeNumber(keyOffsets[i], keyLength(i)) == key) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public int indexOf(String key) {
+        byte[] keyBuf = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < size; i++) {
+            if ((keyLengthBytes[i] & 0x80) != 0 && keyEquals(i, keyBuf)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public int indexOf(BKVKey key) {
+        if (!key.isStringKey()) {
+            return indexOf(key.getNumberKey());
+        }
+
+        byte[] keyBuf = key.bytes();
+        for (int i = 0; i < size; i++) {
+            if ((keyLengthBytes[i] & 0x80) != 0 && keyEquals(i, keyBuf)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean keyEquals(int index, byte[] key) {
+        int keyLength = keyLength(index);
+        if (keyLength != key.length) {
+            return false;
+        }
+
+        int keyOffset = keyOffsets[index];
+        for (int i = 0; i < keyLength; i++) {
+            if (byteAt(keyOffset + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Nullable
+    public KV get(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : getByIndex(index);
+    }
+
+    @Nullable
+    public KV get(int key) {
+        return get((long) key);
+    }
+
+    @Nullable
+    public KV get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : getByIndex(index);
+    }
+
+    @Nullable
+    public KV get(BKVKey key) {
+        int index = indexOf(key);
+        return index < 0 ? null : getByIndex(index);
+    }
+
+    public boolean containsKey(Object key) {
+        if (key instanceof Integer || key instanceof Long) {
+            return indexOf(((Number) key).longValue()) >= 0;
+        } else if (key instanceof String) {
+            return indexOf((String) key) >= 0;
+        } else if (key instanceof BKVKey) {
+            return indexOf((BKVKey) key) >= 0;
+        }
+
+        return false;
+    }
+
+    public boolean containsKey(BKVKey key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Nullable
+    public Long getNumberValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : numberValue(index);
+    }
+
+    @Nullable
+    public Long getNumberValue(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : numberValue(index);
+    }
+
+    @Nullable
+    public String getStringValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : stringValue(index);
+    }
+
+    @Nullable
+    public String getStringValue(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : stringValue(index);
+    }
+
+    @Nullable
+    public Float getFloatValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : floatValue(index);
+    }
+
+    @Nullable
+    public Float getFloatValue(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : floatValue(index);
+    }
+
+    @Nullable
+    public Boolean getBooleanValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : booleanValue(index);
+    }
+
+    @Nullable
+    public Boolean getBooleanValue(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : booleanValue(index);
+    }
+
+    @Nullable
+    public long[] getLongArray(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeLongArray(valueView(index));
+    }
+
+    @Nullable
+    public long[] getLongArray(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeLongArray(valueView(index));
+    }
+
+    @Nullable
+    public int[] getIntArray(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeIntArray(valueView(index));
+    }
+
+    @Nullable
+    public int[] getIntArray(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeIntArray(valueView(index));
+    }
+
+    @Nullable
+    public float[] getFloatArray(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeFloatArray(valueView(index));
+    }
+
+    @Nullable
+    public float[] getFloatArray(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeFloatArray(valueView(index));
+    }
+
+    @Nullable
+    public double[] getDoubleArray(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeDoubleArray(valueView(index));
+    }
+
+    @Nullable
+    public double[] getDoubleArray(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeDoubleArray(valueView(index));
+    }
+
+    public void forEachLong(long key, LongConsumer consumer) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            CodecUtil.forEachLong(valueView(index), consumer);
+        }
+    }
+
+    public void forEachLong(String key, LongConsumer consumer) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            CodecUtil.forEachLong(valueView(index), consumer);
+        }
+    }
+
+    public void forEachDouble(long key, DoubleConsumer consumer) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            CodecUtil.forEachDouble(valueView(index), consumer);
+        }
+    }
+
+    public void forEachDouble(String key, DoubleConsumer consumer) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            CodecUtil.forEachDouble(valueView(index), consumer);
+        }
+    }
+
+    @Nullable
+    public long[] getDeltaLongArray(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeDeltaLongArray(valueView(index));
+    }
+
+    @Nullable
+    public long[] getDeltaLongArray(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : CodecUtil.decodeDeltaLongArray(valueView(index));
+    }
+
+    public void forEachDeltaLong(long key, LongConsumer consumer) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            CodecUtil.forEachDeltaLong(valueView(index), consumer);
+        }
+    }
+
+    public void forEachDeltaLong(String key, LongConsumer consumer) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            CodecUtil.forEachDeltaLong(valueView(index), consumer);
+        }
+    }
+
+    @Nullable
+    public byte[] getDecompressedValue(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : decompressedValue(index);
+    }
+
+    @Nullable
+    public byte[] getDecompressedValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : decompressedValue(index);
+    }
+
+    public long getLong(long key, long defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : numberValue(index);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : numberValue(index);
+    }
+
+    public int getInt(long key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : (int) numberValue(index);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : (int) numberValue(index);
+    }
+
+    public float getFloat(long key, float defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : floatValue(index);
+    }
+
+    public float getFloat(String key, float defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : floatValue(index);
+    }
+
+    public double getDouble(long key, double defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : doubleValue(index);
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : doubleValue(index);
+    }
+
+    public boolean getBoolean(long key, boolean defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : booleanValue(index);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : booleanValue(index);
+    }
+
+    public long getLong(BKVKey key, long defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : numberValue(index);
+    }
+
+    public int getInt(BKVKey key, int defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : (int) numberValue(index);
+    }
+
+    public float getFloat(BKVKey key, float defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : floatValue(index);
+    }
+
+    public double getDouble(BKVKey key, double defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : doubleValue(index);
+    }
+
+    public boolean getBoolean(BKVKey key, boolean defaultValue) {
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : booleanValue(index);
+    }
+
+    @Nullable
+    public String getStringValue(BKVKey key) {
+        int index = indexOf(key);
+        return index < 0 ? null : stringValue(index);
+    }
+
+    /**
+     * Nested kvs packed in the value of the key, as a view over the same backing buffer, null if not found
+     */
+    @Nullable
+    public BKVView getBKVValue(long key) {
+        int index = indexOf(key);
+        return index < 0 ? null : bkvValue(index);
+    }
+
+    @Nullable
+    public BKVView getBKVValue(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : bkvValue(index);
+    }
+
+    @Nullable
+    public BKVView getBKVValue(BKVKey key) {
+        int index = indexOf(key);
+        return index < 0 ? null : bkvValue(index);
+    }
+
+    /**
+     * Follow keys through nested bkv values, only the values on the path are indexed,
+     * returns the kv of the last key, null if a key is not found.
+     * Keys are Integer or Long for number keys, String or {@link BKVKey}
+     */
+    @Nullable
+    public KV path(Object... keys) {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("empty path");
+        }
+
+        BKVView view = this;
+        for (int i = 0; ; i++) {
+            int index = view.indexOf(keys[i]);
+            if (index < 0) {
+                return null;
+            }
+            if (i == keys.length - 1) {
+                return view.getByIndex(index);
+            }
+            view = view.bkvValue(index);
+        }
+    }
+
+    private int indexOf(Object key) {
+        if (key instanceof Integer || key instanceof Long) {
+            return indexOf(((Number) key).longValue());
+        } else if (key instanceof String) {
+            return indexOf((String) key);
+        } else if (key instanceof BKVKey) {
+            return indexOf((BKVKey) key);
+        }
+
+        throw new InvalidKeyTypeException("unsupported key type: " + key.getClass().getSimpleName());
+    }
+
+    private BKVView bkvValue(int index) {
+        int valueOffset = valueOffset(index);
+        int valueLimit = valueOffset + valueLengths[index];
+        if (nioBuf == null) {
+            return unpack(buf, valueOffset, valueLimit);
+        }
+
+        return unpack(valueView(index));
+    }
+
+    /**
+     * Materialize all kvs into a {@link BKV}
+     */
+    public BKV toBKV() {
+        BKV bkv = new BKV();
+        for (int i = 0; i < size; i++) {
+            bkv.add(getByIndex(i));
+        }
+        return bkv;
+    }
+
+    private long numberValue(int index) {
+        return decodeNumber(valueOffset(index), valueLengths[index]);
+    }
+
+    private String stringValue(int index) {
+        return decodeString(valueOffset(index), valueLengths[index]);
+    }
+
+    private float floatValue(int index) {
+        if (valueLengths[index] < 4) {
+            throw new InvalidValueTypeException();
+        }
+        return decodeFloat(valueOffset(index));
+    }
+
+    private double doubleValue(int index) {
+        switch (valueLengths[index]) {
+            case 8: return nioBuf != null ? CodecUtil.decodeDouble(nioBuf, valueOffset(index)) : CodecUtil.decodeDouble(buf, valueOffset(index));
+            case 4: return decodeFloat(valueOffset(index));
+            default: throw new InvalidValueTypeException();
+        }
+    }
+
+    private boolean booleanValue(int index) {
+        if (nioBuf != null) {
+            return CodecUtil.decodeBoolean(nioBuf, valueOffset(index), valueLengths[index]);
+        }
+        return CodecUtil.decodeBoolean(buf, valueOffset(index), valueLengths[index]);
+    }
+
+    private byte[] decompressedValue(int index) {
+        if (nioBuf != null) {
+            byte[] value = getValue(index);
+            return ValueCompression.decompress(value, 0, value.length);
+        }
+        return ValueCompression.decompress(buf, valueOffset(index), valueLengths[index]);
+    }
+
+    private byte byteAt(int i) {
+        return nioBuf != null ? nioBuf.get(i) : buf[i];
+    }
+
+    private long decodeNumber(int offset, int length) {
+        return nioBuf != null ? CodecUtil.decodeNumber(nioBuf, offset, length) : CodecUtil.decodeNumber(buf, offset, length);
+    }
+
+    private float decodeFloat(int offset) {
+        return nioBuf != null ? CodecUtil.decodeFloat(nioBuf, offset) : CodecUtil.decodeFloat(buf, offset);
+    }
+
+    private String decodeString(int offset, int length) {
+        if (nioBuf != null) {
+            return new String(CodecUtil.copyOfRange(nioBuf, offset, length), StandardCharsets.UTF_8);
+        }
+        return new String(buf, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private byte[] copyOfRange(int offset, int length) {
+        if (nioBuf != null) {
+            return CodecUtil.copyOfRange(nioBuf, offset, length);
+        }
+        return Arrays.copyOfRange(buf, offset, offset + length);
+    }
+
+    private ByteBuffer valueView(int index) {
+        int valueOffset = valueOffset(index);
+        if (nioBuf == null) {
+            return ByteBuffer.wrap(buf, valueOffset, valueLengths[index]);
+        }
+
+        ByteBuffer src = nioBuf.duplicate();
+        ((Buffer) src).limit(valueOffset + valueLengths[index]).position(valueOffset);
+        return src;
+    }
+
+    private int keyLength(int index) {
+        return keyLengthBytes[index] & 0x7F;
+    }
+
+    private int valueOffset(int index) {
+        return keyOffsets[index] + keyLength(index);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("index=%d, size=%d", index, size));
+        }
+    }
+}
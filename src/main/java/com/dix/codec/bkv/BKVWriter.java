@@ -0,0 +1,204 @@
+package com.dix.codec.bkv;
+
+import com.dix.codec.bkv.exception.InvalidKeyTypeException;
+import com.dix.codec.bkv.exception.PackKVFailException;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes kvs straight to an {@link OutputStream} or a {@link WritableByteChannel} through a small buffer,
+ * without building a {@link BKV}. Keys are Integer or Long for number keys, String or {@link BKVKey}.
+ * Large values can be streamed with {@link #writeHeader(Object, int)} followed by {@link #writeRaw(byte[], int, int)}.
+ * A writer is not thread safe.
+ */
+public final class BKVWriter implements Flushable, Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Largest kv length readers accept, 4 length bytes of 7 bits
+     */
+    private static final long MAX_KV_LENGTH = 0x0FFFFFFF;
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+
+    public BKVWriter(OutputStream out) {
+        this.out = out;
+        this.channel = null;
+    }
+
+    public BKVWriter(WritableByteChannel channel) {
+        this.out = null;
+        this.channel = channel;
+    }
+
+    public void write(KV kv) throws IOException {
+        int size = kv.encodedSize();
+        if (size <= buf.length) {
+            ensure(size);
+            pos = kv.packTo(buf, pos);
+        } else {
+            flushBuffer();
+            writeOut(kv.pack(), 0, size);
+        }
+    }
+
+    public void write(BKV bkv) throws IOException {
+        for (KV kv : bkv.getItems()) {
+            write(kv);
+        }
+    }
+
+    /**
+     * Write a kv of value encoded like {@link KV#KV(Object, Object)}
+     */
+    public void write(Object key, Object value) throws IOException {
+        write(new KV(key, value));
+    }
+
+    public void writeLong(Object key, long value) throws IOException {
+        writeKey(key, CodecUtil.encodedNumberSize(value));
+        ensure(8);
+        pos = CodecUtil.encodeNumber(value, buf, pos);
+    }
+
+    public void writeFloat(Object key, float value) throws IOException {
+        writeKey(key, 4);
+        ensure(4);
+        pos = CodecUtil.encodeFloat(value, buf, pos);
+    }
+
+    public void writeDouble(Object key, double value) throws IOException {
+        writeKey(key, 8);
+        ensure(8);
+        pos = CodecUtil.encodeDouble(value, buf, pos);
+    }
+
+    public void writeString(Object key, String value) throws IOException {
+        writeBytes(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeBytes(Object key, byte[] value) throws IOException {
+        writeBytes(key, value, 0, value.length);
+    }
+
+    public void writeBytes(Object key, byte[] value, int offset, int length) throws IOException {
+        writeKey(key, length);
+        writeRaw(value, offset, length);
+    }
+
+    /**
+     * Write the length and key of a kv, the valueLength bytes of the value must follow with {@link #writeRaw(byte[], int, int)}.
+     * Key and value together must fit in the 4 byte length of a kv, about 256 MB
+     */
+    public void writeHeader(Object key, int valueLength) throws IOException {
+        writeKey(key, valueLength);
+    }
+
+    void writeHeader(boolean isStringKey, byte[] key, int keyLength, int valueLength) throws IOException {
+        if (keyLength < 0) {
+            keyLength = key.length;
+        }
+        if (keyLength > 0x7F) {
+            throw new PackKVFailException("key too long: " + keyLength);
+        }
+        if (valueLength < 0) {
+            throw new PackKVFailException("negative value length: " + valueLength);
+        }
+
+        long totalLength = 1L + keyLength + valueLength;
+        if (totalLength > MAX_KV_LENGTH) {
+            throw new PackKVFailException(String.format("kv too long, length=%d, max=%d", totalLength, MAX_KV_LENGTH));
+        }
+
+        // at most 4 length bytes after the check above
+        ensure(4 + 1 + keyLength);
+        pos = CodecUtil.encodeLength(totalLength, buf, pos);
+        buf[pos++] = (byte) (isStringKey ? keyLength | 0x80 : keyLength);
+        System.arraycopy(key, 0, buf, pos, keyLength);
+        pos += keyLength;
+    }
+
+    /**
+     * Write bytes as they are, for values after {@link #writeHeader(Object, int)} or already packed kvs
+     */
+    public void writeRaw(byte[] src, int offset, int length) throws IOException {
+        if (length > buf.length - pos) {
+            flushBuffer();
+            if (length >= buf.length) {
+                writeOut(src, offset, length);
+                return;
+            }
+        }
+
+        System.arraycopy(src, offset, buf, pos, length);
+        pos += length;
+    }
+
+    private void writeKey(Object key, int valueLength) throws IOException {
+        if (key instanceof BKVKey) {
+            BKVKey bkvKey = (BKVKey) key;
+            writeHeader(bkvKey.isStringKey(), bkvKey.bytes(), -1, valueLength);
+        } else if (key instanceof Integer || key instanceof Long) {
+            writeHeader(false, CodecUtil.encodeNumber(((Number) key).longValue()), -1, valueLength);
+        } else if (key instanceof String) {
+            writeHeader(true, ((String) key).getBytes(StandardCharsets.UTF_8), -1, valueLength);
+        } else {
+            throw new InvalidKeyTypeException("unsupported key type: " + key.getClass().getSimpleName());
+        }
+    }
+
+    private void ensure(int size) throws IOException {
+        if (buf.length - pos < size) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            writeOut(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private void writeOut(byte[] src, int offset, int length) throws IOException {
+        if (out != null) {
+            out.write(src, offset, length);
+            return;
+        }
+
+        ByteBuffer bb = ByteBuffer.wrap(src, offset, length);
+        while (bb.hasRemaining()) {
+            channel.write(bb);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Flush and close the stream or channel
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (out != null) {
+            out.close();
+        } else {
+            channel.close();
+        }
+    }
+}
@@ -2,11 +2,20 @@ package com.dix.codec.bkv;
 
 import com.dix.codec.bkv.exception.InvalidBufferException;
 import com.dix.codec.bkv.exception.InvalidLengthException;
+import com.dix.codec.bkv.exception.InvalidValueTypeException;
 
-import java.io.ByteArrayOutputStream;
-import java.util.Arrays;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
 
 public class CodecUtil {
+    private final static int MAX_VARINT_SIZE = 10;
     private final static char[] hexChars = "0123456789ABCDEF".toCharArray();
     public static String bytesToHex(byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
@@ -27,79 +36,238 @@ public class CodecUtil {
         return data;
     }
 
-    private static void reverse(byte[] buf) {
-        for (int i = 0, j = buf.length - 1; i < j; i++, j--) {
-            byte t = buf[i];
-            buf[i] = buf[j];
-            buf[j] = t;
+    // byte count of encoded number and length, indexed by Long.numberOfLeadingZeros
+    private final static byte[] numberSizes = new byte[65];
+    private final static byte[] lengthSizes = new byte[65];
+    static {
+        for (int nlz = 0; nlz <= 64; nlz++) {
+            int bits = 64 - nlz;
+            numberSizes[nlz] = (byte) Math.max(1, (bits + 7) >>> 3);
+            lengthSizes[nlz] = (byte) ((bits + 6) / 7);
         }
     }
 
     public static byte[] encodeNumber(long n) {
-        if (n == 0) {
-            return new byte[]{ 0 };
+        byte[] buf = new byte[encodedNumberSize(n)];
+        encodeNumber(n, buf, 0);
+
+        return buf;
+    }
+
+    /**
+     * Count of bytes {@link #encodeNumber(long)} produces for n, leading zero bytes are stripped
+     */
+    public static int encodedNumberSize(long n) {
+        return numberSizes[Long.numberOfLeadingZeros(n)];
+    }
+
+    /**
+     * Encode number into dst at offset, returns the offset after the number bytes
+     */
+    public static int encodeNumber(long n, byte[] dst, int offset) {
+        int size = encodedNumberSize(n);
+        if (size == 1) {
+            dst[offset] = (byte) n;
+            return offset + 1;
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        while (n != 0) {
-            byte v = (byte) (n & 0xFF);
-            buffer.write(v);
-            n = n >>> 8; // unsigned shift, use zero as filter
+        for (int i = offset + size - 1; i >= offset; i--) {
+            dst[i] = (byte) n;
+            n = n >>> 8;
         }
 
-        byte[] buf = buffer.toByteArray();
-        reverse(buf);
+        return offset + size;
+    }
 
-        return buf;
+    public static void encodeNumber(long n, ByteBuffer dst) {
+        for (int i = (encodedNumberSize(n) - 1) << 3; i >= 0; i -= 8) {
+            dst.put((byte) (n >>> i));
+        }
     }
 
     public static long decodeNumber(byte[] buf) {
+        return decodeNumber(buf, 0, buf.length);
+    }
+
+    public static long decodeNumber(byte[] buf, int offset, int length) {
         long n = 0;
-        if (buf.length > 8) {
+        if (length > 8) {
             throw new InvalidBufferException();
         }
 
-        for (byte b : buf) {
+        for (int i = offset, end = offset + length; i < end; i++) {
             n <<= 8;
-            n |= (b & 0xFF);
+            n |= (buf[i] & 0xFF);
         }
 
         return n;
     }
 
-    public static byte[] encodeLength(long n) {
-        if (n == 0) {
-            throw new InvalidLengthException();
+    /**
+     * Decode number from buf[index, index + length) with absolute gets, position and limit are not changed
+     */
+    public static long decodeNumber(ByteBuffer buf, int index, int length) {
+        long n = 0;
+        if (length > 8) {
+            throw new InvalidBufferException();
         }
 
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        while (n != 0) {
-            byte v = (byte) (n & 0x7F);
-            v |= (byte) 0x80;
-            buffer.write(v);
-            n = n >>> 7; // unsigned shift, use zero as filter
+        for (int i = index, end = index + length; i < end; i++) {
+            n <<= 8;
+            n |= (buf.get(i) & 0xFF);
         }
 
-        byte[] buf = buffer.toByteArray();
-        reverse(buf);
+        return n;
+    }
 
-        int lastByteIndex = buf.length - 1;
-        byte lastByte = buf[lastByteIndex];
-        lastByte &= (byte) 0x7F;
-        buf[lastByteIndex] = lastByte;
+    /**
+     * Encode float as 4 big-endian bytes into dst at offset, returns the offset after the bytes
+     */
+    public static int encodeFloat(float f, byte[] dst, int offset) {
+        int bits = Float.floatToIntBits(f);
+        for (int i = offset + 3; i >= offset; i--) {
+            dst[i] = (byte) bits;
+            bits >>>= 8;
+        }
+
+        return offset + 4;
+    }
+
+    /**
+     * Encode double as 8 big-endian bytes into dst at offset, returns the offset after the bytes
+     */
+    public static int encodeDouble(double d, byte[] dst, int offset) {
+        long bits = Double.doubleToLongBits(d);
+        for (int i = offset + 7; i >= offset; i--) {
+            dst[i] = (byte) bits;
+            bits >>>= 8;
+        }
+
+        return offset + 8;
+    }
+
+    public static float decodeFloat(byte[] buf, int offset) {
+        return Float.intBitsToFloat((int) decodeNumber(buf, offset, 4));
+    }
+
+    public static double decodeDouble(byte[] buf, int offset) {
+        return Double.longBitsToDouble(decodeNumber(buf, offset, 8));
+    }
+
+    public static boolean decodeBoolean(byte[] buf, int offset, int length) {
+        long v = decodeNumber(buf, offset, length);
+        if (v == 0) {
+            return false;
+        } else if (v == 1) {
+            return true;
+        }
+        throw new InvalidValueTypeException();
+    }
+
+    public static float decodeFloat(ByteBuffer buf, int index) {
+        return Float.intBitsToFloat((int) decodeNumber(buf, index, 4));
+    }
+
+    public static double decodeDouble(ByteBuffer buf, int index) {
+        return Double.longBitsToDouble(decodeNumber(buf, index, 8));
+    }
+
+    public static boolean decodeBoolean(ByteBuffer buf, int index, int length) {
+        long v = decodeNumber(buf, index, length);
+        if (v == 0) {
+            return false;
+        } else if (v == 1) {
+            return true;
+        }
+        throw new InvalidValueTypeException();
+    }
+
+    public static byte[] encodeLength(long n) {
+        byte[] buf = new byte[encodedLengthSize(n)];
+        encodeLength(n, buf, 0);
 
         return buf;
     }
 
+    /**
+     * Count of bytes {@link #encodeLength(long)} produces for n
+     */
+    public static int encodedLengthSize(long n) {
+        int size = lengthSizes[Long.numberOfLeadingZeros(n)];
+        if (size == 0) {
+            throw new InvalidLengthException();
+        }
+
+        return size;
+    }
+
+    /**
+     * Encode length into dst at offset, returns the offset after the length bytes
+     */
+    public static int encodeLength(long n, byte[] dst, int offset) {
+        int size = encodedLengthSize(n);
+        switch (size) {
+            case 1:
+                dst[offset] = (byte) n;
+                break;
+
+            case 2:
+                dst[offset] = (byte) ((n >>> 7) | 0x80);
+                dst[offset + 1] = (byte) (n & 0x7F);
+                break;
+
+            default:
+                int last = offset + size - 1;
+                dst[last] = (byte) (n & 0x7F);
+                for (int i = last - 1; i >= offset; i--) {
+                    n = n >>> 7;
+                    dst[i] = (byte) ((n & 0x7F) | 0x80);
+                }
+        }
+
+        return offset + size;
+    }
+
+    public static void encodeLength(long n, ByteBuffer dst) {
+        for (int i = (encodedLengthSize(n) - 1) * 7; i > 0; i -= 7) {
+            dst.put((byte) (((n >>> i) & 0x7F) | 0x80));
+        }
+        dst.put((byte) (n & 0x7F));
+    }
+
     public static DecodeLengthResult decodeLength(byte[] buf) {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        return decodeLength(buf, 0, buf.length);
+    }
+
+    /**
+     * Decode length from buf[offset, limit) without copying the remaining bytes,
+     * the result carries the offset right after the length bytes.
+     */
+    public static DecodeLengthResult decodeLength(byte[] buf, int offset, int limit) {
+        checkRange(buf, offset, limit);
+
+        int lengthByteSize = decodeLengthSize(buf, offset, limit);
+        long length = decodeLengthValue(buf, offset, lengthByteSize);
+
+        return new DecodeLengthResult(length, buf, offset + lengthByteSize, limit);
+    }
+
+    /**
+     * Count of length bytes starting at buf[offset], use with {@link #decodeLengthValue(byte[], int, int)}
+     * to decode a length without allocating
+     */
+    public static int decodeLengthSize(byte[] buf, int offset, int limit) {
+        if (offset < limit && buf[offset] >= 0) {
+            return 1;
+        }
+        if (offset + 1 < limit && buf[offset + 1] >= 0) {
+            return 2;
+        }
 
         int lengthByteSize = 0;
-        for (byte b : buf) {
-            byte v = (byte) (b & 0x7f);
-            buffer.write(v);
+        for (int i = offset; i < limit; i++) {
             lengthByteSize++;
-            if ((b & 0x80) == 0) {
+            if (buf[i] >= 0 || lengthByteSize > 4) {
                 break;
             }
         }
@@ -108,14 +276,338 @@ public class CodecUtil {
             throw new InvalidLengthException();
         }
 
+        return lengthByteSize;
+    }
+
+    public static long decodeLengthValue(byte[] buf, int offset, int lengthByteSize) {
+        switch (lengthByteSize) {
+            case 1: return buf[offset] & 0x7F;
+            case 2: return ((buf[offset] & 0x7F) << 7) | (buf[offset + 1] & 0x7F);
+        }
+
+        long length = 0;
+        for (int i = offset, end = offset + lengthByteSize; i < end; i++) {
+            length <<= 7;
+            length |= (buf[i] & 0x7F);
+        }
+
+        return length;
+    }
+
+    /**
+     * Decode length at the position of buf, the position is advanced past the length bytes
+     */
+    public static long decodeLength(ByteBuffer buf) {
+        int position = buf.position();
+        int lengthByteSize = decodeLengthSize(buf, position, buf.limit());
+        long length = decodeLengthValue(buf, position, lengthByteSize);
+        ((Buffer) buf).position(position + lengthByteSize);
+
+        return length;
+    }
+
+    public static int decodeLengthSize(ByteBuffer buf, int index, int limit) {
+        int lengthByteSize = 0;
+        for (int i = index; i < limit; i++) {
+            lengthByteSize++;
+            if (buf.get(i) >= 0 || lengthByteSize > 4) {
+                break;
+            }
+        }
+
+        if (lengthByteSize == 0 || lengthByteSize > 4) {
+            throw new InvalidLengthException();
+        }
+
+        return lengthByteSize;
+    }
+
+    public static long decodeLengthValue(ByteBuffer buf, int index, int lengthByteSize) {
         long length = 0;
-        for (byte b : buffer.toByteArray()) {
+        for (int i = index, end = index + lengthByteSize; i < end; i++) {
             length <<= 7;
-            length |= b;
+            length |= (buf.get(i) & 0x7F);
         }
 
-        byte[] remainingBuffer = Arrays.copyOfRange(buf, lengthByteSize, buf.length);
+        return length;
+    }
+
+    /**
+     * Receives the kvs found by {@link #forEachKV(byte[], int, int, KVConsumer)}, the key starts at keyOffset
+     * and the value follows the key
+     */
+    @FunctionalInterface
+    public interface KVConsumer {
+        void accept(int keyLengthByte, int keyOffset, int valueLength);
+    }
+
+    /**
+     * Walk the kvs in buf[offset, limit) without copying, stops at the first kv failed to unpack,
+     * returns its offset, or limit if all kvs are complete
+     */
+    public static int forEachKV(byte[] buf, int offset, int limit, KVConsumer consumer) {
+        return forEachKV(buf, null, offset, limit, consumer);
+    }
+
+    /**
+     * Walk the kvs in buf[index, limit) by absolute index, see {@link #forEachKV(byte[], int, int, KVConsumer)}
+     */
+    public static int forEachKV(ByteBuffer buf, int index, int limit, KVConsumer consumer) {
+        return forEachKV(null, buf, index, limit, consumer);
+    }
+
+    /**
+     * Boundary checks of both overloads, exactly one of buf and bytes is set
+     */
+    private static int forEachKV(byte[] buf, ByteBuffer bytes, int offset, int limit, KVConsumer consumer) {
+        while (offset < limit) {
+            int lengthByteSize;
+            try {
+                lengthByteSize = buf != null ? decodeLengthSize(buf, offset, limit) : decodeLengthSize(bytes, offset, limit);
+            } catch (InvalidLengthException e) {
+                break;
+            }
+
+            long totalLength = buf != null ? decodeLengthValue(buf, offset, lengthByteSize) : decodeLengthValue(bytes, offset, lengthByteSize);
+            int p = offset + lengthByteSize;
+            if (p >= limit || limit - p < totalLength) {
+                break;
+            }
+
+            int keyLengthByte = (buf != null ? buf[p] : bytes.get(p)) & 0xFF;
+            int keyLength = keyLengthByte & 0x7F;
+            if (keyLength + 1 > totalLength) {
+                break;
+            }
+
+            consumer.accept(keyLengthByte, p + 1, (int) totalLength - 1 - keyLength);
+            offset = p + (int) totalLength;
+        }
+
+        return offset;
+    }
+
+    /**
+     * Encode values contiguously as 8 big-endian bytes each
+     */
+    public static byte[] encodeLongArray(long[] values) {
+        byte[] buf = new byte[values.length * 8];
+        ByteBuffer.wrap(buf).asLongBuffer().put(values);
+        return buf;
+    }
+
+    /**
+     * Encode values contiguously as 4 big-endian bytes each
+     */
+    public static byte[] encodeIntArray(int[] values) {
+        byte[] buf = new byte[values.length * 4];
+        ByteBuffer.wrap(buf).asIntBuffer().put(values);
+        return buf;
+    }
+
+    public static byte[] encodeFloatArray(float[] values) {
+        byte[] buf = new byte[values.length * 4];
+        ByteBuffer.wrap(buf).asFloatBuffer().put(values);
+        return buf;
+    }
+
+    public static byte[] encodeDoubleArray(double[] values) {
+        byte[] buf = new byte[values.length * 8];
+        ByteBuffer.wrap(buf).asDoubleBuffer().put(values);
+        return buf;
+    }
+
+    /**
+     * Decode the bytes from the position to the limit of value as packed by {@link #encodeLongArray(long[])},
+     * position and limit of value are not changed
+     */
+    public static long[] decodeLongArray(ByteBuffer value) {
+        LongBuffer src = elements(value, 8).asLongBuffer();
+        long[] values = new long[src.remaining()];
+        src.get(values);
+        return values;
+    }
+
+    public static int[] decodeIntArray(ByteBuffer value) {
+        IntBuffer src = elements(value, 4).asIntBuffer();
+        int[] values = new int[src.remaining()];
+        src.get(values);
+        return values;
+    }
+
+    public static float[] decodeFloatArray(ByteBuffer value) {
+        FloatBuffer src = elements(value, 4).asFloatBuffer();
+        float[] values = new float[src.remaining()];
+        src.get(values);
+        return values;
+    }
+
+    public static double[] decodeDoubleArray(ByteBuffer value) {
+        DoubleBuffer src = elements(value, 8).asDoubleBuffer();
+        double[] values = new double[src.remaining()];
+        src.get(values);
+        return values;
+    }
+
+    /**
+     * Pass each long packed by {@link #encodeLongArray(long[])} to consumer without allocating an array
+     */
+    public static void forEachLong(ByteBuffer value, LongConsumer consumer) {
+        LongBuffer src = elements(value, 8).asLongBuffer();
+        for (int i = 0, n = src.limit(); i < n; i++) {
+            consumer.accept(src.get(i));
+        }
+    }
+
+    public static void forEachDouble(ByteBuffer value, DoubleConsumer consumer) {
+        DoubleBuffer src = elements(value, 8).asDoubleBuffer();
+        for (int i = 0, n = src.limit(); i < n; i++) {
+            consumer.accept(src.get(i));
+        }
+    }
+
+    /**
+     * Map signed n to unsigned so numbers of small magnitude stay small, 0, -1, 1, -2 become 0, 1, 2, 3
+     */
+    public static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    public static long unzigzag(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    /**
+     * Encode each value as the zigzag mapped delta from the previous value, the first from 0,
+     * every delta in 7 bit groups most significant first with the high bit set on all but the last byte, like lengths
+     */
+    public static byte[] encodeDeltaLongArray(long[] values) {
+        int size = 0;
+        long previous = 0;
+        for (long v : values) {
+            size += varintSize(zigzag(v - previous));
+            previous = v;
+        }
+
+        byte[] buf = new byte[size];
+        int p = 0;
+        previous = 0;
+        for (long v : values) {
+            p = encodeVarint(zigzag(v - previous), buf, p);
+            previous = v;
+        }
+
+        return buf;
+    }
 
-        return new DecodeLengthResult(length, remainingBuffer);
+    /**
+     * Decode the bytes from the position to the limit of value as packed by {@link #encodeDeltaLongArray(long[])},
+     * position and limit of value are not changed
+     */
+    public static long[] decodeDeltaLongArray(ByteBuffer value) {
+        int count = 0;
+        for (int i = value.position(), limit = value.limit(); i < limit; i++) {
+            if (value.get(i) >= 0) {
+                count++;
+            }
+        }
+
+        long[] values = new long[count];
+        long previous = 0;
+        long z = 0;
+        int groups = 0;
+        int n = 0;
+        for (int i = value.position(), limit = value.limit(); i < limit; i++) {
+            byte b = value.get(i);
+            z = (z << 7) | (b & 0x7F);
+            if (b < 0) {
+                checkVarintGroups(++groups);
+                continue;
+            }
+
+            previous += unzigzag(z);
+            values[n++] = previous;
+            z = 0;
+            groups = 0;
+        }
+        if (groups != 0) {
+            // truncated varint
+            throw new InvalidValueTypeException();
+        }
+
+        return values;
+    }
+
+    /**
+     * Pass each absolute value packed by {@link #encodeDeltaLongArray(long[])} to consumer while decoding
+     */
+    public static void forEachDeltaLong(ByteBuffer value, LongConsumer consumer) {
+        long previous = 0;
+        long z = 0;
+        int groups = 0;
+        for (int i = value.position(), limit = value.limit(); i < limit; i++) {
+            byte b = value.get(i);
+            z = (z << 7) | (b & 0x7F);
+            if (b < 0) {
+                checkVarintGroups(++groups);
+                continue;
+            }
+
+            previous += unzigzag(z);
+            consumer.accept(previous);
+            z = 0;
+            groups = 0;
+        }
+        if (groups != 0) {
+            // truncated varint
+            throw new InvalidValueTypeException();
+        }
+    }
+
+    private static int varintSize(long n) {
+        return n == 0 ? 1 : (64 - Long.numberOfLeadingZeros(n) + 6) / 7;
+    }
+
+    private static int encodeVarint(long n, byte[] dst, int offset) {
+        for (int i = varintSize(n) - 1; i > 0; i--) {
+            dst[offset++] = (byte) (0x80 | (n >>> (i * 7)));
+        }
+        dst[offset++] = (byte) (n & 0x7F);
+
+        return offset;
+    }
+
+    /**
+     * A 64 bit varint has at most {@link #MAX_VARINT_SIZE} bytes, the last one without the high bit
+     */
+    private static void checkVarintGroups(int groups) {
+        if (groups >= MAX_VARINT_SIZE) {
+            throw new InvalidValueTypeException();
+        }
+    }
+
+    private static ByteBuffer elements(ByteBuffer value, int elementSize) {
+        if (value.remaining() % elementSize != 0) {
+            throw new InvalidValueTypeException();
+        }
+        return value.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Copy buf[index, index + length) with absolute positions, position and limit of buf are not changed
+     */
+    public static byte[] copyOfRange(ByteBuffer buf, int index, int length) {
+        byte[] dst = new byte[length];
+        ByteBuffer src = buf.duplicate();
+        ((Buffer) src).limit(index + length).position(index);
+        src.get(dst);
+
+        return dst;
+    }
+
+    static void checkRange(byte[] buf, int offset, int limit) {
+        if (offset < 0 || limit > buf.length || offset > limit) {
+            throw new InvalidBufferException();
+        }
     }
 }
@@ -1,22 +1,40 @@
 package com.dix.codec.bkv;
 
+import java.util.Arrays;
+
 public class DecodeLengthResult {
     private final long length;
+    private final byte[] buf;
+    private final int offset;
+    private final int limit;
     private byte[] remainingBuffer;
 
-    DecodeLengthResult(long length, byte[] remainingBuffer) {
+    DecodeLengthResult(long length, byte[] buf, int offset, int limit) {
         this.length = length;
-        this.remainingBuffer = remainingBuffer;
-        if (remainingBuffer == null) {
-            this.remainingBuffer = new byte[]{};
-        }
+        this.buf = buf;
+        this.offset = offset;
+        this.limit = limit;
     }
 
     public long getLength() {
         return length;
     }
 
+    /**
+     * Offset of the first byte after the length bytes
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
     public byte[] getRemainingBuffer() {
+        if (remainingBuffer == null) {
+            remainingBuffer = Arrays.copyOfRange(buf, offset, limit);
+        }
         return remainingBuffer;
     }
 }
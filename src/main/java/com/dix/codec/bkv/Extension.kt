@@ -11,4 +11,13 @@ fun Float.toBytes(order: ByteOrder): ByteArray {
     val buffer = ByteBuffer.allocate(4)
     buffer.order(order)
     return buffer.array()
-}
\ No newline at end of file
+}
+
+fun BKV.dumpString(): String {
+    val sb = StringBuilder()
+    for (kv in items) {
+        val key = if (kv.isStringKey) kv.stringKey else kv.numberKey.toString()
+        sb.append("[BKV] kv: ").append(key).append(" -> ").append(CodecUtil.bytesToHex(kv.value)).append('\n')
+    }
+    return sb.toString()
+}
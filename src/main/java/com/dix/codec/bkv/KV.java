@@ -5,16 +5,28 @@ import com.dix.codec.bkv.exception.InvalidValueTypeException;
 import com.dix.codec.bkv.exception.PackKVFailException;
 import com.dix.codec.bkv.exception.UnpackKVFailException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
 
+/**
+ * Key and value bytes are ranges of backing arrays, a kv unpacked with {@link BKV#unpackInto(BKV, byte[], int, int)}
+ * is a reusable slot backed by the arena of its {@link BKV}, which is refilled on the next unpack
+ */
 public class KV {
-    private final boolean isStringKey;
-    private final byte[] key;
-    private final byte[] value;
+    private boolean isStringKey;
+    private byte[] key;
+    private int keyOffset;
+    private int keyLength;
+    private byte[] value;
+    private int valueOffset;
+    private int valueLength;
+    private byte[] decompressed;
 
     public KV(Object key, Object value) {
         String keySimpleClassName = key.getClass().getSimpleName();
@@ -37,7 +49,13 @@ public class KV {
             case "String": {
                 this.isStringKey = true;
                 String string = (String) key;
-                this.key = string.getBytes();
+                this.key = string.getBytes(StandardCharsets.UTF_8);
+            } break;
+
+            case "BKVKey": {
+                BKVKey bkvKey = (BKVKey) key;
+                this.isStringKey = bkvKey.isStringKey();
+                this.key = bkvKey.bytes();
             } break;
 
             default:
@@ -58,7 +76,7 @@ public class KV {
 
             case "String": {
                 String string = (String) value;
-                this.value = string.getBytes();
+                this.value = string.getBytes(StandardCharsets.UTF_8);
             } break;
 
             case "byte[]": {
@@ -74,6 +92,36 @@ public class KV {
                 this.value = buffer.array();
             } break;
 
+            case "Double": {
+                Double d = (Double) value;
+                ByteBuffer buffer = ByteBuffer.allocate(8);
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                buffer.putDouble(0, d);
+                this.value = buffer.array();
+            } break;
+
+            case "long[]": {
+                this.value = CodecUtil.encodeLongArray((long[]) value);
+            } break;
+
+            case "int[]": {
+                this.value = CodecUtil.encodeIntArray((int[]) value);
+            } break;
+
+            case "float[]": {
+                this.value = CodecUtil.encodeFloatArray((float[]) value);
+            } break;
+
+            case "double[]": {
+                this.value = CodecUtil.encodeDoubleArray((double[]) value);
+            } break;
+
+            case "BKV": {
+                BKV bkv = (BKV) value;
+                this.value = new byte[bkv.encodedSize()];
+                bkv.packTo(this.value, 0);
+            } break;
+
             case "Boolean": {
                 Boolean v = (Boolean) value;
                 int n = 0;
@@ -87,12 +135,40 @@ public class KV {
                 throw new InvalidKeyTypeException("unsupported value type: " + valueSimpleClassName);
         }
 
+        this.keyLength = this.key.length;
+        this.valueLength = this.value.length;
+    }
+
+    /**
+     * Kv with the packed kvs of value as its value, read back with {@link #getBKVValue()}
+     */
+    public KV(Object key, BKV value) {
+        this(key, (Object) value);
     }
 
     public KV(byte[] key, boolean isStringKey, byte[] value) {
         this.isStringKey = isStringKey;
         this.key = key;
+        this.keyLength = key.length;
         this.value = value;
+        this.valueLength = value.length;
+    }
+
+    /**
+     * Empty slot, filled by {@link #set(byte[], boolean, int, int, int, int)}
+     */
+    KV() {
+    }
+
+    void set(byte[] buf, boolean isStringKey, int keyOffset, int keyLength, int valueOffset, int valueLength) {
+        this.isStringKey = isStringKey;
+        this.key = buf;
+        this.keyOffset = keyOffset;
+        this.keyLength = keyLength;
+        this.value = buf;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
+        this.decompressed = null;
     }
 
     public Boolean isStringKey() {
@@ -100,11 +176,11 @@ public class KV {
     }
 
     public String getStringKey() {
-        return new String(this.key);
+        return new String(this.key, this.keyOffset, this.keyLength, StandardCharsets.UTF_8);
     }
 
     public Long getNumberKey() {
-        return CodecUtil.decodeNumber(this.key);
+        return decodeNumberKey();
     }
 
     public Object getKey() {
@@ -115,71 +191,268 @@ public class KV {
         return getNumberKey();
     }
 
+    boolean isNumberKeyDecodable() {
+        return !this.isStringKey && this.keyLength <= 8;
+    }
+
+    long decodeNumberKey() {
+        return CodecUtil.decodeNumber(this.key, this.keyOffset, this.keyLength);
+    }
+
+    int keyHashCode() {
+        return BKVIndex.hash(this.key, this.keyOffset, this.keyLength);
+    }
+
+    boolean keyEquals(byte[] key) {
+        return keyEquals(key, 0, key.length);
+    }
+
+    boolean keyEquals(BKVKey key) {
+        return this.isStringKey == key.isStringKey() && keyEquals(key.bytes());
+    }
+
+    boolean keyEquals(KV kv) {
+        return keyEquals(kv.key, kv.keyOffset, kv.keyLength);
+    }
+
+    private boolean keyEquals(byte[] key, int offset, int length) {
+        if (this.keyLength != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (this.key[this.keyOffset + i] != key[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     public String getStringValue() {
-        return new String(this.value);
+        return new String(this.value, this.valueOffset, this.valueLength, StandardCharsets.UTF_8);
     }
 
     public Long getNumberValue() {
-        return CodecUtil.decodeNumber(this.value);
+        return getLong();
     }
 
     public Float getFloatValue() {
-        ByteBuffer buffer = ByteBuffer.wrap(this.value);
-        buffer.order(ByteOrder.BIG_ENDIAN);
-        return buffer.getFloat();
+        return getFloat();
     }
 
     public Boolean getBooleanValue() {
-        int v = getNumberValue().intValue();
-        switch (v) {
-            case 0: return false;
-            case 1: return true;
+        return getBoolean();
+    }
+
+    public long getLong() {
+        return CodecUtil.decodeNumber(this.value, this.valueOffset, this.valueLength);
+    }
+
+    public int getInt() {
+        return (int) getLong();
+    }
+
+    public float getFloat() {
+        if (this.valueLength < 4) {
+            throw new InvalidValueTypeException();
+        }
+        return CodecUtil.decodeFloat(this.value, this.valueOffset);
+    }
+
+    /**
+     * Double value packed in 8 bytes, float value packed in 4 bytes is widened
+     */
+    public double getDouble() {
+        switch (this.valueLength) {
+            case 8: return CodecUtil.decodeDouble(this.value, this.valueOffset);
+            case 4: return CodecUtil.decodeFloat(this.value, this.valueOffset);
             default: throw new InvalidValueTypeException();
         }
     }
 
+    public boolean getBoolean() {
+        return CodecUtil.decodeBoolean(this.value, this.valueOffset, this.valueLength);
+    }
+
+    /**
+     * Longs packed contiguously in 8 bytes each, by a long[] value
+     */
+    public long[] getLongArray() {
+        return CodecUtil.decodeLongArray(valueBuffer());
+    }
+
+    /**
+     * Ints packed contiguously in 4 bytes each, by an int[] value
+     */
+    public int[] getIntArray() {
+        return CodecUtil.decodeIntArray(valueBuffer());
+    }
+
+    public float[] getFloatArray() {
+        return CodecUtil.decodeFloatArray(valueBuffer());
+    }
+
+    public double[] getDoubleArray() {
+        return CodecUtil.decodeDoubleArray(valueBuffer());
+    }
+
+    /**
+     * Pass each long of a long[] value to consumer without allocating an array
+     */
+    public void forEachLong(LongConsumer consumer) {
+        CodecUtil.forEachLong(valueBuffer(), consumer);
+    }
+
+    public void forEachDouble(DoubleConsumer consumer) {
+        CodecUtil.forEachDouble(valueBuffer(), consumer);
+    }
+
+    /**
+     * Absolute values of a sequence packed by {@link BKV#addDeltaLongs(Object, long[])}
+     */
+    public long[] getDeltaLongArray() {
+        return CodecUtil.decodeDeltaLongArray(valueBuffer());
+    }
+
+    /**
+     * Pass each absolute value of a sequence packed by {@link BKV#addDeltaLongs(Object, long[])} to consumer while decoding
+     */
+    public void forEachDeltaLong(LongConsumer consumer) {
+        CodecUtil.forEachDeltaLong(valueBuffer(), consumer);
+    }
+
+    private ByteBuffer valueBuffer() {
+        return ByteBuffer.wrap(this.value, this.valueOffset, this.valueLength);
+    }
+
+    /**
+     * Value bytes, copied if the value is a range of a larger array, such as the arena of a reused {@link BKV}
+     */
     public byte[] getValue() {
-        return this.value;
+        if (this.valueOffset == 0 && this.valueLength == this.value.length) {
+            return this.value;
+        }
+
+        return Arrays.copyOfRange(this.value, this.valueOffset, this.valueOffset + this.valueLength);
+    }
+
+    /**
+     * Value packed by {@link BKV#addCompressed(Object, byte[], int)}, decompressed on the first call and kept,
+     * must not be modified
+     */
+    public byte[] getDecompressedValue() {
+        if (this.decompressed == null) {
+            this.decompressed = ValueCompression.decompress(this.value, this.valueOffset, this.valueLength);
+        }
+
+        return this.decompressed;
+    }
+
+    public int getValueLength() {
+        return this.valueLength;
+    }
+
+    /**
+     * Nested kvs packed in the value, as a view over the value bytes without copying
+     */
+    public BKVView getBKVValue() {
+        return BKVView.unpack(this.value, this.valueOffset, this.valueOffset + this.valueLength);
     }
 
     public byte[] pack() throws IOException, PackKVFailException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] buf = new byte[encodedSize()];
+        packTo(buf, 0);
+
+        return buf;
+    }
+
+    /**
+     * Count of bytes {@link #pack()} produces
+     */
+    public int encodedSize() {
+        int totalLength = 1 + this.keyLength + this.valueLength;
+        return CodecUtil.encodedLengthSize(totalLength) + totalLength;
+    }
+
+    /**
+     * Pack into dst at offset, returns the offset after the packed bytes
+     */
+    public int packTo(byte[] dst, int offset) throws PackKVFailException {
+        byte keyLengthByte = keyLengthByte();
+        int totalLength = 1 + this.keyLength + this.valueLength;
+        int size = CodecUtil.encodedLengthSize(totalLength) + totalLength;
+        if (offset < 0 || dst.length - offset < size) {
+            throw new PackKVFailException(String.format("buffer too small, size=%d, offset=%d, bufLength=%d", size, offset, dst.length));
+        }
+
+        int p = CodecUtil.encodeLength(totalLength, dst, offset);
+        dst[p++] = keyLengthByte;
+        System.arraycopy(this.key, this.keyOffset, dst, p, this.keyLength);
+        p += this.keyLength;
+        System.arraycopy(this.value, this.valueOffset, dst, p, this.valueLength);
+
+        return p + this.valueLength;
+    }
 
-        int keyLength = this.key.length;
+    /**
+     * Pack into dst at its position, the position is advanced by the packed bytes
+     */
+    public void packTo(ByteBuffer dst) throws PackKVFailException {
+        byte keyLengthByte = keyLengthByte();
+        int totalLength = 1 + this.keyLength + this.valueLength;
+        int size = CodecUtil.encodedLengthSize(totalLength) + totalLength;
+        if (dst.remaining() < size) {
+            throw new PackKVFailException(String.format("buffer too small, size=%d, remaining=%d", size, dst.remaining()));
+        }
+
+        CodecUtil.encodeLength(totalLength, dst);
+        dst.put(keyLengthByte);
+        dst.put(this.key, this.keyOffset, this.keyLength);
+        dst.put(this.value, this.valueOffset, this.valueLength);
+    }
+
+    private byte keyLengthByte() throws PackKVFailException {
+        int keyLength = this.keyLength;
         if (keyLength > 128) {
             throw new PackKVFailException(String.format("key length is bigger than 128: %d", keyLength));
         }
 
-        int totalLength = 1 + keyLength + this.value.length;
-
         byte keyLengthByte = (byte) (keyLength & 0x7F);
         if (this.isStringKey) {
             keyLengthByte |= 0x80;
         }
 
-        buffer.write(CodecUtil.encodeLength(totalLength));
-        buffer.write(keyLengthByte);
-        buffer.write(this.key);
-        buffer.write(this.value);
-
-        return buffer.toByteArray();
+        return keyLengthByte;
     }
 
     public static UnpackKVResult unpack(byte[] buf) {
-        if (buf == null || buf.length == 0) {
+        if (buf == null) {
             return null;
         }
 
-        DecodeLengthResult decodeLengthResult = CodecUtil.decodeLength(buf);
+        return unpack(buf, 0, buf.length);
+    }
+
+    /**
+     * Unpack one kv from buf[offset, limit), the remaining bytes are not copied,
+     * use {@link UnpackKVResult#getOffset()} to continue with the next kv
+     */
+    public static UnpackKVResult unpack(byte[] buf, int offset, int limit) {
+        if (buf == null || offset >= limit) {
+            return null;
+        }
+
+        DecodeLengthResult decodeLengthResult = CodecUtil.decodeLength(buf, offset, limit);
         long totalLength = decodeLengthResult.getLength();
-        byte[] pb = decodeLengthResult.getRemainingBuffer(); // pb => pending parse buffer
+        int p = decodeLengthResult.getOffset(); // p => pending parse offset
 
-        int remainingBufLength = pb.length;
+        int remainingBufLength = limit - p;
         if (remainingBufLength <= 0 || remainingBufLength < totalLength) {
             throw new UnpackKVFailException(String.format("invalid total length, totalLength=%d, pendingParseBufLength=%d", totalLength, remainingBufLength));
         }
 
-        byte keyLengthByte = pb[0];
+        byte keyLengthByte = buf[p];
         int keyLength = keyLengthByte & 0x7F;
         boolean isStringKey = false;
         if ((keyLengthByte & 0x80) != 0) {
@@ -190,11 +463,48 @@ public class KV {
             throw new UnpackKVFailException(String.format("key length bigger than total length, keyLength=%d, totalLength=%d", keyLength, totalLength));
         }
 
-        byte[] keyBuf = Arrays.copyOfRange(pb, 1, 1 + keyLength);
-        byte[] valueBuf = Arrays.copyOfRange(pb, 1 + keyLength, (int) totalLength);
+        int end = p + (int) totalLength;
+        byte[] keyBuf = Arrays.copyOfRange(buf, p + 1, p + 1 + keyLength);
+        byte[] valueBuf = Arrays.copyOfRange(buf, p + 1 + keyLength, end);
+
+        KV kv = new KV(keyBuf, isStringKey, valueBuf);
+        return new UnpackKVResult(kv, buf, end, limit);
+    }
+
+    /**
+     * Unpack one kv at the position of buf, works with heap and direct buffers,
+     * the position is advanced past the kv, or left unchanged if it fails
+     */
+    public static UnpackKVResult unpack(ByteBuffer buf) {
+        int position = buf.position();
+        int limit = buf.limit();
+        if (position >= limit) {
+            return null;
+        }
+
+        int lengthByteSize = CodecUtil.decodeLengthSize(buf, position, limit);
+        long totalLength = CodecUtil.decodeLengthValue(buf, position, lengthByteSize);
+        int p = position + lengthByteSize; // p => pending parse index
+
+        int remainingBufLength = limit - p;
+        if (remainingBufLength <= 0 || remainingBufLength < totalLength) {
+            throw new UnpackKVFailException(String.format("invalid total length, totalLength=%d, pendingParseBufLength=%d", totalLength, remainingBufLength));
+        }
+
+        byte keyLengthByte = buf.get(p);
+        int keyLength = keyLengthByte & 0x7F;
+        boolean isStringKey = (keyLengthByte & 0x80) != 0;
+
+        if (keyLength + 1 > totalLength) {
+            throw new UnpackKVFailException(String.format("key length bigger than total length, keyLength=%d, totalLength=%d", keyLength, totalLength));
+        }
+
+        int end = p + (int) totalLength;
+        byte[] keyBuf = CodecUtil.copyOfRange(buf, p + 1, keyLength);
+        byte[] valueBuf = CodecUtil.copyOfRange(buf, p + 1 + keyLength, end - p - 1 - keyLength);
+        ((Buffer) buf).position(end);
 
         KV kv = new KV(keyBuf, isStringKey, valueBuf);
-        byte[] remainingBuffer = Arrays.copyOfRange(pb, (int) totalLength, pb.length);
-        return new UnpackKVResult(kv, remainingBuffer);
+        return new UnpackKVResult(kv, buf, end, limit);
     }
 }
@@ -1,18 +1,56 @@
 package com.dix.codec.bkv;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class UnpackBKVResult {
     private final BKV bkv;
+    private final byte[] buf;
+    private final ByteBuffer nioBuf;
+    private final int offset;
+    private final int limit;
     private byte[] remainingBuffer;
 
-    UnpackBKVResult(BKV bkv, byte[] remainingBuffer) {
+    UnpackBKVResult(BKV bkv, byte[] buf, int offset, int limit) {
         this.bkv = bkv;
-        this.remainingBuffer = remainingBuffer;
-        if (remainingBuffer == null) {
-            this.remainingBuffer = new byte[]{};
-        }
+        this.buf = buf;
+        this.nioBuf = null;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    UnpackBKVResult(BKV bkv, ByteBuffer nioBuf, int offset, int limit) {
+        this.bkv = bkv;
+        this.buf = null;
+        this.nioBuf = nioBuf;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Offset of the first byte not consumed, the remaining bytes are buf[offset, limit),
+     * for a ByteBuffer source it is the absolute index the position was moved to
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getRemainingLength() {
+        return limit - offset;
     }
 
     public byte[] getRemainingBuffer() {
+        if (remainingBuffer == null) {
+            if (nioBuf != null) {
+                remainingBuffer = CodecUtil.copyOfRange(nioBuf, offset, limit - offset);
+            } else {
+                remainingBuffer = buf == null ? new byte[]{} : Arrays.copyOfRange(buf, offset, limit);
+            }
+        }
         return remainingBuffer;
     }
 
@@ -1,18 +1,56 @@
 package com.dix.codec.bkv;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public class UnpackKVResult {
     private final KV kv;
+    private final byte[] buf;
+    private final ByteBuffer nioBuf;
+    private final int offset;
+    private final int limit;
     private byte[] remainingBuffer;
 
-    UnpackKVResult(KV kv, byte[] remainingBuffer) {
+    UnpackKVResult(KV kv, byte[] buf, int offset, int limit) {
         this.kv = kv;
-        this.remainingBuffer = remainingBuffer;
-        if (remainingBuffer == null) {
-            this.remainingBuffer = new byte[]{};
-        }
+        this.buf = buf;
+        this.nioBuf = null;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    UnpackKVResult(KV kv, ByteBuffer nioBuf, int offset, int limit) {
+        this.kv = kv;
+        this.buf = null;
+        this.nioBuf = nioBuf;
+        this.offset = offset;
+        this.limit = limit;
+    }
+
+    /**
+     * Offset of the first byte not consumed, the remaining bytes are buf[offset, limit),
+     * for a ByteBuffer source it is the absolute index the position was moved to
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getRemainingLength() {
+        return limit - offset;
     }
 
     public byte[] getRemainingBuffer() {
+        if (remainingBuffer == null) {
+            if (nioBuf != null) {
+                remainingBuffer = CodecUtil.copyOfRange(nioBuf, offset, limit - offset);
+            } else {
+                remainingBuffer = buf == null ? new byte[]{} : Arrays.copyOfRange(buf, offset, limit);
+            }
+        }
         return remainingBuffer;
     }
 
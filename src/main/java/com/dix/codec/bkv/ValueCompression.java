@@ -0,0 +1,174 @@
+package com.dix.codec.bkv;
+
+import com.dix.codec.bkv.exception.InvalidCompressedValueException;
+import com.dix.codec.bkv.exception.InvalidLengthException;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression of single values, a compressed value starts with a flag byte:
+ * {@link #RAW} followed by the value, or {@link #DEFLATE} followed by the encoded length of the value and
+ * the zlib stream of it deflated at level 1.
+ * Values shorter than the threshold, or not getting smaller, are kept raw.
+ * Decompression rejects declared lengths above a maximum and grows its output with the inflated bytes,
+ * so a few hostile bytes can not force a large allocation.
+ * Deflaters, inflaters and the scratch buffer are pooled per thread.
+ */
+public final class ValueCompression {
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * Largest decompressed length accepted by {@link #decompress(byte[], int, int)}
+     */
+    public static final int DEFAULT_MAX_LENGTH = 16 * 1024 * 1024;
+
+    public static final byte RAW = 0;
+    public static final byte DEFLATE = 1;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater());
+    private static final ThreadLocal<byte[]> scratches = ThreadLocal.withInitial(() -> new byte[DEFAULT_THRESHOLD]);
+
+    private ValueCompression() {
+    }
+
+    public static byte[] compress(byte[] value) {
+        return compress(value, DEFAULT_THRESHOLD);
+    }
+
+    public static byte[] compress(byte[] value, int threshold) {
+        if (value.length > 0 && value.length >= threshold) {
+            byte[] compressed = deflate(value);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+
+        byte[] buf = new byte[1 + value.length];
+        buf[0] = RAW;
+        System.arraycopy(value, 0, buf, 1, value.length);
+        return buf;
+    }
+
+    /**
+     * Deflated value with the flag and length, null if it is not smaller than the value
+     */
+    private static byte[] deflate(byte[] value) {
+        int lengthSize = CodecUtil.encodedLengthSize(value.length);
+        int budget = value.length - 1 - lengthSize;
+        if (budget <= 0) {
+            return null;
+        }
+
+        byte[] scratch = scratches.get();
+        if (scratch.length < budget) {
+            scratch = new byte[Math.max(budget, scratch.length * 2)];
+            scratches.set(scratch);
+        }
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(value);
+        deflater.finish();
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n >= budget) {
+                return null;
+            }
+            n += deflater.deflate(scratch, n, budget - n);
+        }
+
+        byte[] buf = new byte[1 + lengthSize + n];
+        buf[0] = DEFLATE;
+        CodecUtil.encodeLength(value.length, buf, 1);
+        System.arraycopy(scratch, 0, buf, 1 + lengthSize, n);
+        return buf;
+    }
+
+    /**
+     * Value compressed by {@link #compress(byte[], int)} in buf[offset, offset + length)
+     */
+    public static byte[] decompress(byte[] buf, int offset, int length) {
+        return decompress(buf, offset, length, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Value compressed by {@link #compress(byte[], int)} in buf[offset, offset + length),
+     * deflated values declaring more than maxLength bytes are rejected
+     */
+    public static byte[] decompress(byte[] buf, int offset, int length, int maxLength) {
+        if (length < 1) {
+            throw new InvalidCompressedValueException("missing flag");
+        }
+
+        int limit = offset + length;
+        switch (buf[offset]) {
+            case RAW:
+                return Arrays.copyOfRange(buf, offset + 1, limit);
+
+            case DEFLATE:
+                return inflate(buf, offset + 1, limit, maxLength);
+
+            default:
+                throw new InvalidCompressedValueException("unknown flag: " + buf[offset]);
+        }
+    }
+
+    private static byte[] inflate(byte[] buf, int offset, int limit, int maxLength) {
+        int lengthSize;
+        try {
+            lengthSize = CodecUtil.decodeLengthSize(buf, offset, limit);
+        } catch (InvalidLengthException e) {
+            throw new InvalidCompressedValueException("invalid length");
+        }
+        long valueLength = CodecUtil.decodeLengthValue(buf, offset, lengthSize);
+        if (valueLength > maxLength) {
+            throw new InvalidCompressedValueException(String.format("length too large, length=%d, max=%d", valueLength, maxLength));
+        }
+        int length = (int) valueLength;
+        offset += lengthSize;
+
+        // start from a few times the input, grown as bytes are inflated up to the declared length
+        byte[] value = new byte[(int) Math.min(length, Math.max(limit - offset, 64) * 4L)];
+        byte[] probe = scratches.get();
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(buf, offset, limit - offset);
+        int n = 0;
+        try {
+            while (!inflater.finished()) {
+                int count;
+                if (n < value.length) {
+                    count = inflater.inflate(value, n, value.length - n);
+                    n += count;
+                } else if (n < length) {
+                    value = Arrays.copyOf(value, (int) Math.min(length, value.length * 2L));
+                    continue;
+                } else {
+                    // only the end of the zlib stream may be left
+                    count = inflater.inflate(probe, 0, 1);
+                    if (count > 0) {
+                        throw new InvalidCompressedValueException(String.format("longer than declared, length=%d", length));
+                    }
+                }
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new InvalidCompressedValueException(e.getMessage());
+        }
+
+        if (!inflater.finished() || n != length) {
+            throw new InvalidCompressedValueException(String.format("length mismatch, expected=%d, actual=%d", length, n));
+        }
+        if (inflater.getRemaining() > 0) {
+            throw new InvalidCompressedValueException(String.format("trailing bytes, count=%d", inflater.getRemaining()));
+        }
+
+        return value;
+    }
+}
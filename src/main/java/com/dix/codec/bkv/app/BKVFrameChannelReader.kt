@@ -0,0 +1,78 @@
+package com.dix.codec.bkv.app
+
+import com.dix.codec.bkv.BKV
+import com.dix.codec.bkv.BKVView
+import java.io.Closeable
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.channels.ReadableByteChannel
+
+/**
+ * Frame reader of a [ReadableByteChannel], works with channels in non-blocking mode, e.g. on a selector thread.
+ *
+ * Bytes are read into one buffer which is compacted in place, frames are decoded without copying,
+ * see [FrameFormat] for the supported formats. The reader is not thread safe.
+ */
+class BKVFrameChannelReader @JvmOverloads constructor(
+    private val channel: ReadableByteChannel,
+    format: FrameFormat = FrameFormat.Checksummed,
+    bufferSize: Int = BKVFrameInputStream.DefaultBufferSize,
+    maxBacklog: Int = BKVFrameInputStream.DefaultMaxBacklog,
+    logger: FrameLogger = FrameLogger.None
+) : Closeable {
+    private val frames = FrameBuffer(format, bufferSize, maxBacklog, FrameStats(), logger)
+    private var view = ByteBuffer.wrap(frames.buf)
+
+    val stats: FrameStats
+        get() = frames.stats
+
+    /**
+     * True once the channel reached the end of the stream and all complete frames are returned
+     */
+    var isEndOfStream = false
+        private set
+
+    /**
+     * Next frame as a view over the read buffer, valid until the next poll. Reads the channel once if no complete
+     * frame is buffered, returns null if the channel has no more bytes for now or reached the end of the stream
+     */
+    fun poll(): BKVView? {
+        val buffered = frames.next()
+        if (buffered != null || isEndOfStream) {
+            return buffered
+        }
+
+        val space = frames.prepare()
+        if (view.array() !== frames.buf) {
+            view = ByteBuffer.wrap(frames.buf)
+        }
+        (view as Buffer).limit(frames.end + space).position(frames.end)
+        val n = channel.read(view)
+        if (n < 0) {
+            frames.discard()
+            isEndOfStream = true
+            return null
+        }
+
+        frames.advance(n)
+        return frames.next()
+    }
+
+    /**
+     * Next frame copied into a [BKV], null if no frame is complete
+     */
+    fun pollBKV(): BKV? {
+        return poll()?.toBKV()
+    }
+
+    /**
+     * Count of bytes read but not decoded yet
+     */
+    fun pending(): Int {
+        return frames.pending()
+    }
+
+    override fun close() {
+        channel.close()
+    }
+}
@@ -0,0 +1,70 @@
+package com.dix.codec.bkv.app
+
+import com.dix.codec.bkv.BKV
+import com.dix.codec.bkv.BKVView
+import java.io.Closeable
+import java.io.InputStream
+
+/**
+ * Blocking frame reader of an [InputStream], such as a serial port, a pipe, a file or a socket.
+ *
+ * Bytes are read into one buffer which is compacted in place, frames are decoded without copying,
+ * see [FrameFormat] for the supported formats. The reader is not thread safe.
+ */
+class BKVFrameInputStream @JvmOverloads constructor(
+    private val input: InputStream,
+    format: FrameFormat = FrameFormat.Checksummed,
+    bufferSize: Int = DefaultBufferSize,
+    maxBacklog: Int = DefaultMaxBacklog,
+    logger: FrameLogger = FrameLogger.None
+) : Closeable {
+    private val frames = FrameBuffer(format, bufferSize, maxBacklog, FrameStats(), logger)
+
+    val stats: FrameStats
+        get() = frames.stats
+
+    /**
+     * Next frame as a view over the read buffer, valid until the next read, blocks until a frame is complete.
+     * Returns null at the end of the input, the bytes of an incomplete last frame are counted as skipped
+     */
+    fun readView(): BKVView? {
+        while (true) {
+            val view = frames.next()
+            if (view != null) {
+                return view
+            }
+
+            val space = frames.prepare()
+            val n = input.read(frames.buf, frames.end, space)
+            if (n < 0) {
+                frames.discard()
+                return null
+            }
+            frames.advance(n)
+        }
+    }
+
+    /**
+     * Next frame copied into a [BKV], null at the end of the input
+     */
+    fun read(): BKV? {
+        return readView()?.toBKV()
+    }
+
+    /**
+     * Count of bytes read but not decoded yet
+     */
+    fun pending(): Int {
+        return frames.pending()
+    }
+
+    override fun close() {
+        input.close()
+    }
+
+    companion object {
+        const val DefaultBufferSize = 8 * 1024
+
+        const val DefaultMaxBacklog = 16 * 1024 * 1024
+    }
+}
@@ -0,0 +1,140 @@
+package com.dix.codec.bkv.app
+
+import com.dix.codec.bkv.CodecUtil
+import java.nio.ByteBuffer
+
+/**
+ * Unpacks the BKV of a frame body in buf[from, to), null if it is not a valid BKV
+ */
+internal fun interface FrameUnpacker<T : Any> {
+    fun unpack(buf: ByteArray, from: Int, to: Int): T?
+}
+
+/**
+ * Parser of `0xFF | length | checksum | BKV` frames in a buffer owned by the caller, shared by [FrameDecoder] and
+ * [FrameBuffer] so head scan, checks, resync and [stats] are the same for both.
+ * After an invalid frame scanning moves to the next head candidate without copying.
+ */
+internal class ChecksummedFrameParser<T : Any>(
+    val stats: FrameStats,
+    var logger: FrameLogger,
+    private val unpacker: FrameUnpacker<T>
+) {
+    private var view = ByteBuffer.wrap(ByteArray(0))
+
+    /**
+     * Offset to continue from after [next], the end of the frame returned, or the start of an incomplete frame,
+     * or end if there is no head left
+     */
+    var position = 0
+        private set
+
+    /**
+     * Next valid frame in buf[start, end), null if more bytes are needed, skipped and invalid bytes are counted
+     */
+    fun next(buf: ByteArray, start: Int, end: Int): T? {
+        var p = start
+        while (true) {
+            val head = indexOfHead(buf, p, end)
+            if (head < 0) {
+                skip(end - p)
+                position = end
+                return null
+            }
+
+            skip(head - p)
+            p = head
+            position = p
+            val frameEnd = FrameDecoder.checkFrame(buf, p, end)
+            if (frameEnd == FrameDecoder.Incomplete) {
+                log(LogLevel.TRACE) { "frame length not match, size=${end - p}" }
+                return null
+            }
+            if (frameEnd == FrameDecoder.InvalidLength) {
+                log(LogLevel.DEBUG) { "invalid frame length, length=0" }
+                stats.invalidFrames++
+                p = resync(p)
+                continue
+            }
+
+            val bodyStart = p + 3
+            if (frameEnd == FrameDecoder.InvalidChecksum) {
+                log(LogLevel.DEBUG) {
+                    val length = buf[p + 1].toInt() and 0xFF
+                    "checksum not match, calculateChecksum=${FrameDecoder.checksum(buf, bodyStart, p + 2 + length)}, checksum=${buf[p + 2]}"
+                }
+                stats.invalidChecksum++
+                p = resync(p)
+                continue
+            }
+
+            val frame = unpacker.unpack(buf, bodyStart, frameEnd)
+            if (frame == null) {
+                log(LogLevel.DEBUG) { "unpack bkv fail, empty items" }
+                stats.invalidFrames++
+                p = resync(p)
+                continue
+            }
+
+            log(LogLevel.TRACE) { "frame: ${CodecUtil.bytesToHex(buf.copyOfRange(p, frameEnd))}" }
+            position = frameEnd
+            stats.framesOk++
+            return frame
+        }
+    }
+
+    /**
+     * Drop the head of an invalid frame, scanning continues from the next byte
+     */
+    private fun resync(head: Int): Int {
+        stats.resyncs++
+        skip(1)
+        return head + 1
+    }
+
+    private fun skip(count: Int) {
+        if (count > 0) {
+            stats.bytesSkipped += count
+        }
+    }
+
+    private inline fun log(level: LogLevel, message: () -> String) {
+        if (logger.isEnabled(level)) {
+            logger.log(level, message())
+        }
+    }
+
+    /**
+     * Find the next head byte 8 bytes at a time, a word is turned into a mask with 0x80 set exactly in the 0xFF bytes
+     */
+    private fun indexOfHead(buf: ByteArray, from: Int, to: Int): Int {
+        var view = view
+        if (view.array() !== buf) {
+            view = ByteBuffer.wrap(buf)
+            this.view = view
+        }
+
+        var i = from
+        while (i + 8 <= to) {
+            val x = view.getLong(i).inv()
+            val mask = (((x and Low7Bits) + Low7Bits) or x or Low7Bits).inv()
+            if (mask != 0L) {
+                return i + (java.lang.Long.numberOfLeadingZeros(mask) ushr 3)
+            }
+            i += 8
+        }
+
+        while (i < to) {
+            if (buf[i] == FrameDecoder.Head) {
+                return i
+            }
+            i++
+        }
+
+        return -1
+    }
+
+    companion object {
+        private const val Low7Bits = 0x7F7F7F7F7F7F7F7FL
+    }
+}
@@ -2,69 +2,57 @@ package com.dix.codec.bkv.app
 
 import com.dix.codec.bkv.BKV
 import com.dix.codec.bkv.CodecUtil
-import java.util.*
+import com.dix.codec.bkv.dumpString
 
+/**
+ * Shared parser for a single input stream, use a [FrameDecoder] per connection instead
+ */
 object CoreParser {
-    private val LogTag = "core-parser"
+    private val decoder = FrameDecoder(FrameListener { bkv ->
+        log(LogLevel.INFO) { "parse out bkv:\n${bkv.dumpString()}" }
+    }, FrameLogger.None)
+
+    /**
+     * Logger of the parser, [FrameLogger.None] by default so parsing only updates [stats]. Frames are logged at
+     * [LogLevel.INFO] and parsing details at lower levels, e.g. `StdoutFrameLogger("core-parser", LogLevel.INFO)`
+     */
+    var logger: FrameLogger
+        get() = decoder.logger
+        set(value) {
+            decoder.logger = value
+        }
 
-    private var remainingBuf = ByteArray(0)
+    val stats: FrameStats
+        get() = decoder.stats
 
+    @Synchronized
     fun parse(newBuf: ByteArray) {
-        var buf = concat(remainingBuf, newBuf)
-        while (true) {
-            if (buf.isEmpty()) {
-                break
-            }
-
-            val parseResult = process(buf)
-            when (parseResult.result) {
-                ParseResult.ResultIncomplete -> {
-                    remainingBuf = parseResult.buf!!
-                    return
-                }
-
-                ParseResult.ResultInvalid -> {
-                    buf = buf.copyOfRange(1, buf.size)
-                }
-
-                ParseResult.ResultFatal -> {
-                    buf = ByteArray(0)
-                }
-
-                ParseResult.ResultOK -> {
-                    buf = parseResult.buf!!
-                    log("parse out bkv:")
-                    parseResult.bkv!!.dump()
-                }
-            }
-        }
-
-        remainingBuf = buf
+        decoder.feed(newBuf)
     }
 
     fun process(buf: ByteArray): ParseResult {
-        log("parsing: ${CodecUtil.bytesToHex(buf)}")
+        log(LogLevel.TRACE) { "parsing: ${CodecUtil.bytesToHex(buf)}" }
 
         if (buf.size < 4) {
-            log("buffer too short")
+            log(LogLevel.TRACE) { "buffer too short" }
             return ParseResult(ParseResult.ResultIncomplete, buf, null)
         }
 
         val headIndex = indexOf(buf, byteArrayOf(0xFF.toByte()))
         if (headIndex < 0) {
-            log( "header not exists")
+            log(LogLevel.DEBUG) { "header not exists" }
             return ParseResult(ParseResult.ResultFatal, null, null)
         }
 
         val pb = buf.copyOfRange(headIndex, buf.size)
         if (pb.size < 3) {
-            log("frame too short")
+            log(LogLevel.TRACE) { "frame too short" }
             return ParseResult(ParseResult.ResultIncomplete, buf, null)
         }
 
         val length = pb[1].toInt()
         if (pb.size < length + 2) {
-            log("frame length not match, size=${pb.size}, length=$length")
+            log(LogLevel.TRACE) { "frame length not match, size=${pb.size}, length=$length" }
             return ParseResult(ParseResult.ResultIncomplete, buf, null)
         }
 
@@ -72,13 +60,13 @@ object CoreParser {
 
         val checksum = calculateChecksum(bb)
         if (checksum != pb[2]) {
-            log("checksum not match, calculateChecksum=$checksum, checksum=${pb[2]}")
+            log(LogLevel.DEBUG) { "checksum not match, calculateChecksum=$checksum, checksum=${pb[2]}" }
             return ParseResult(ParseResult.ResultInvalid, buf, null)
         }
 
         val unpackBKVResult = BKV.unpack(bb)
         if (unpackBKVResult.bkv.items.size == 0) {
-            log("unpack bkv fail, empty items")
+            log(LogLevel.DEBUG) { "unpack bkv fail, empty items" }
             return ParseResult(ParseResult.ResultInvalid, buf, null)
         }
 
@@ -86,22 +74,11 @@ object CoreParser {
 
     }
 
-    private fun log(content: String) {
-        println(content)
-    }
-
-    private fun concat(vararg arrays: ByteArray): ByteArray {
-        var length = 0
-        for (array in arrays) {
-            length += array.size
-        }
-        val result = ByteArray(length)
-        var pos = 0
-        for (array in arrays) {
-            System.arraycopy(array, 0, result, pos, array.size)
-            pos += array.size
+    private inline fun log(level: LogLevel, message: () -> String) {
+        val logger = logger
+        if (logger.isEnabled(level)) {
+            logger.log(level, message())
         }
-        return result
     }
 
     fun indexOf(array: ByteArray, target: ByteArray): Int {
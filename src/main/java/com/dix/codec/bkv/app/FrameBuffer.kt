@@ -0,0 +1,151 @@
+package com.dix.codec.bkv.app
+
+import com.dix.codec.bkv.BKVView
+import com.dix.codec.bkv.exception.InvalidLengthException
+import com.dix.codec.bkv.exception.UnpackKVFailException
+
+enum class FrameFormat {
+    /**
+     * `0xFF | length | checksum | BKV` frames as decoded by [FrameDecoder], invalid frames are skipped
+     */
+    Checksummed,
+
+    /**
+     * Packed kvs back to back without framing, every kv is read as a frame of its own,
+     * there is no way to resync so an invalid kv fails the stream
+     */
+    Raw
+}
+
+/**
+ * Bytes read from a source and not decoded yet, held in one buffer which is compacted in place and grown only when
+ * a frame does not fit, up to maxBacklog bytes. Frames are returned as views over the buffer without copying,
+ * a view is valid until the next [prepare].
+ */
+internal class FrameBuffer(
+    private val format: FrameFormat,
+    bufferSize: Int,
+    private val maxBacklog: Int,
+    val stats: FrameStats,
+    logger: FrameLogger
+) {
+    private val parser = ChecksummedFrameParser(stats, logger, FrameUnpacker { buf, from, to ->
+        BKVView.unpack(buf, from, to).takeIf { it.size() > 0 }
+    })
+
+    var buf = ByteArray(minOf(maxOf(bufferSize, FrameDecoder.MaxFrameSize), maxBacklog))
+        private set
+    var end = 0
+        private set
+    private var start = 0
+
+    init {
+        require(maxBacklog >= FrameDecoder.MaxFrameSize) { "maxBacklog must not be less than ${FrameDecoder.MaxFrameSize}" }
+    }
+
+    /**
+     * Make room after [end] for reading, returns the count of free bytes
+     */
+    fun prepare(): Int {
+        if (start == end) {
+            start = 0
+            end = 0
+        } else if (end == buf.size) {
+            val pending = end - start
+            if (start == 0) {
+                if (buf.size >= maxBacklog) {
+                    throw UnpackKVFailException("frame larger than $maxBacklog bytes")
+                }
+                buf = buf.copyOf(minOf(buf.size * 2, maxBacklog))
+            } else {
+                System.arraycopy(buf, start, buf, 0, pending)
+                start = 0
+                end = pending
+            }
+        }
+
+        return buf.size - end
+    }
+
+    fun advance(count: Int) {
+        end += count
+        stats.bytesReceived += count
+    }
+
+    /**
+     * Count of bytes read but not decoded yet
+     */
+    fun pending(): Int {
+        return end - start
+    }
+
+    /**
+     * Next complete frame, null if more bytes are needed
+     */
+    fun next(): BKVView? {
+        return when (format) {
+            FrameFormat.Checksummed -> nextChecksummed()
+            FrameFormat.Raw -> nextRaw()
+        }
+    }
+
+    /**
+     * Drop the bytes of an incomplete frame at the end of the input
+     */
+    fun discard() {
+        skip(end - start)
+        start = end
+    }
+
+    private fun nextChecksummed(): BKVView? {
+        val view = parser.next(buf, start, end)
+        start = parser.position
+        return view
+    }
+
+    private fun nextRaw(): BKVView? {
+        var lengthSize = 0
+        var length = 0L
+        while (true) {
+            if (start + lengthSize == end) {
+                return null
+            }
+
+            val b = buf[start + lengthSize++].toInt()
+            length = (length shl 7) or (b and 0x7F).toLong()
+            if (b and 0x80 == 0) {
+                break
+            }
+            if (lengthSize == 4) {
+                stats.invalidFrames++
+                throw InvalidLengthException()
+            }
+        }
+
+        if (length < 1 || lengthSize + length > maxBacklog) {
+            stats.invalidFrames++
+            throw UnpackKVFailException("invalid kv length, length=$length, maxBacklog=$maxBacklog")
+        }
+
+        val recordEnd = start + lengthSize + length.toInt()
+        if (recordEnd > end) {
+            return null
+        }
+
+        val view = BKVView.unpack(buf, start, recordEnd)
+        if (view.size() == 0) {
+            stats.invalidFrames++
+            throw UnpackKVFailException("invalid kv, length=$length")
+        }
+
+        start = recordEnd
+        stats.framesOk++
+        return view
+    }
+
+    private fun skip(count: Int) {
+        if (count > 0) {
+            stats.bytesSkipped += count
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.dix.codec.bkv.app
+
+import com.dix.codec.bkv.BKV
+import java.nio.ByteBuffer
+
+fun interface FrameListener {
+    fun onFrame(bkv: BKV)
+}
+
+/**
+ * Unsigned byte at an absolute index, lets [FrameDecoder.checkFrame] read buffers of other libraries
+ */
+fun interface FrameBytes {
+    fun get(index: Int): Int
+}
+
+/**
+ * Streaming decoder for `0xFF | length | checksum | BKV` frames, length counts the checksum byte and the BKV bytes.
+ *
+ * Bytes are fed as they arrive and decoded frames are pushed to the listener.
+ * Pending bytes are kept in a buffer owned by the decoder, which is compacted in place and grown only when a frame
+ * does not fit, up to maxBacklog bytes, so use one decoder per connection.
+ * After an invalid frame the cursor moves to the next head candidate without copying.
+ * The decoder is not thread safe, its [stats] can be read from any thread.
+ */
+class FrameDecoder @JvmOverloads constructor(
+    private val listener: FrameListener,
+    logger: FrameLogger = FrameLogger.None,
+    initialCapacity: Int = 256,
+    private val maxBacklog: Int = DefaultMaxBacklog
+) {
+    val stats = FrameStats()
+
+    private val parser = ChecksummedFrameParser(stats, logger, FrameUnpacker { buf, from, to ->
+        BKV.unpack(buf, from, to).bkv.takeIf { it.items.size > 0 }
+    })
+
+    var logger: FrameLogger
+        get() = parser.logger
+        set(value) {
+            parser.logger = value
+        }
+
+    private var buf = ByteArray(minOf(maxOf(initialCapacity, MinFrameSize), maxBacklog))
+    private var start = 0
+    private var end = 0
+
+    init {
+        require(maxBacklog >= MaxFrameSize) { "maxBacklog must not be less than $MaxFrameSize" }
+    }
+
+    fun feed(src: ByteArray) {
+        feed(src, 0, src.size)
+    }
+
+    /**
+     * Large inputs are copied and decoded in slices, so no more than maxBacklog bytes are buffered
+     */
+    fun feed(src: ByteArray, off: Int, len: Int) {
+        var p = off
+        val e = off + len
+        while (p < e) {
+            val n = minOf(e - p, maxBacklog - pending())
+            ensureCapacity(n)
+            System.arraycopy(src, p, buf, end, n)
+            end += n
+            p += n
+            stats.bytesReceived += n
+            decode()
+        }
+    }
+
+    fun feed(src: ByteBuffer) {
+        while (src.hasRemaining()) {
+            val n = minOf(src.remaining(), maxBacklog - pending())
+            ensureCapacity(n)
+            src.get(buf, end, n)
+            end += n
+            stats.bytesReceived += n
+            decode()
+        }
+    }
+
+    /**
+     * Count of bytes received but not decoded yet
+     */
+    fun pending(): Int {
+        return end - start
+    }
+
+    fun reset() {
+        start = 0
+        end = 0
+    }
+
+    private fun ensureCapacity(len: Int) {
+        if (end + len <= buf.size) {
+            return
+        }
+
+        val pending = end - start
+        if (pending + len > buf.size) {
+            val capacity = minOf(maxOf(buf.size * 2, pending + len), maxBacklog)
+            val newBuf = ByteArray(capacity)
+            System.arraycopy(buf, start, newBuf, 0, pending)
+            buf = newBuf
+        } else {
+            System.arraycopy(buf, start, buf, 0, pending)
+        }
+        start = 0
+        end = pending
+    }
+
+    private fun decode() {
+        while (true) {
+            val bkv = parser.next(buf, start, end)
+            start = parser.position
+            if (bkv == null) {
+                break
+            }
+            listener.onFrame(bkv)
+        }
+
+        if (start == end) {
+            reset()
+        }
+    }
+
+    internal fun capacity(): Int {
+        return buf.size
+    }
+
+    companion object {
+        const val Head = 0xFF.toByte()
+
+        // head, length, checksum and at least one byte of BKV
+        const val MinFrameSize = 4
+
+        // head, length and 255 bytes of checksum and BKV
+        const val MaxFrameSize = 257
+
+        const val DefaultMaxBacklog = 64 * 1024
+
+        /**
+         * Result of [checkFrame], fewer bytes than the frame needs are available
+         */
+        const val Incomplete = -1
+
+        /**
+         * Result of [checkFrame], the length byte is 0
+         */
+        const val InvalidLength = -2
+
+        /**
+         * Result of [checkFrame], the checksum byte does not match the BKV
+         */
+        const val InvalidChecksum = -3
+
+        /**
+         * Check the length and checksum of the frame with the head at buf[head], end is the end of the bytes
+         * available. Returns the end of the frame, or [Incomplete], [InvalidLength] or [InvalidChecksum].
+         * The BKV of the frame starts at head + 3 and is not unpacked
+         */
+        @JvmStatic
+        fun checkFrame(buf: ByteArray, head: Int, end: Int): Int {
+            return checkFrame(head, end) { buf[it].toInt() and 0xFF }
+        }
+
+        /**
+         * Same as [checkFrame] for any buffer
+         */
+        @JvmStatic
+        fun checkFrame(bytes: FrameBytes, head: Int, end: Int): Int {
+            return checkFrame(head, end) { bytes.get(it) }
+        }
+
+        /**
+         * Checksum of the BKV in buf[from, to), the low byte of the sum of its bytes
+         */
+        @JvmStatic
+        fun checksum(buf: ByteArray, from: Int, to: Int): Byte {
+            return checksum(from, to) { buf[it].toInt() and 0xFF }
+        }
+
+        @JvmStatic
+        fun checksum(bytes: FrameBytes, from: Int, to: Int): Byte {
+            return checksum(from, to) { bytes.get(it) }
+        }
+
+        private inline fun checkFrame(head: Int, end: Int, get: (Int) -> Int): Int {
+            if (end - head < MinFrameSize) {
+                return Incomplete
+            }
+
+            val length = get(head + 1)
+            if (length < 1) {
+                return InvalidLength
+            }
+
+            val frameEnd = head + 2 + length
+            if (frameEnd > end) {
+                return Incomplete
+            }
+
+            if (checksum(head + 3, frameEnd, get) != get(head + 2).toByte()) {
+                return InvalidChecksum
+            }
+
+            return frameEnd
+        }
+
+        private inline fun checksum(from: Int, to: Int, get: (Int) -> Int): Byte {
+            var sum = 0
+            for (i in from until to) {
+                sum += get(i)
+            }
+            return sum.toByte()
+        }
+    }
+}
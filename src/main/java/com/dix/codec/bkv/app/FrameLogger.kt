@@ -0,0 +1,69 @@
+package com.dix.codec.bkv.app
+
+enum class LogLevel {
+    TRACE, DEBUG, INFO, WARN, ERROR
+}
+
+/**
+ * Logging SPI of the frame parsers, callers check [isEnabled] before building a message
+ * so a disabled level costs no string or hex conversion
+ */
+interface FrameLogger {
+    fun isEnabled(level: LogLevel): Boolean
+
+    fun log(level: LogLevel, message: String)
+
+    companion object {
+        @JvmField
+        val None: FrameLogger = object : FrameLogger {
+            override fun isEnabled(level: LogLevel): Boolean = false
+
+            override fun log(level: LogLevel, message: String) {
+            }
+        }
+    }
+}
+
+class StdoutFrameLogger(private val tag: String, private val level: LogLevel) : FrameLogger {
+    override fun isEnabled(level: LogLevel): Boolean {
+        return level >= this.level
+    }
+
+    override fun log(level: LogLevel, message: String) {
+        println("[$tag] $level $message")
+    }
+}
+
+/**
+ * Counters of a frame decoder, updated by the decoding thread and safe to read from any thread
+ */
+class FrameStats {
+    @Volatile
+    var framesOk = 0L
+        internal set
+
+    @Volatile
+    var invalidChecksum = 0L
+        internal set
+
+    @Volatile
+    var invalidFrames = 0L
+        internal set
+
+    @Volatile
+    var resyncs = 0L
+        internal set
+
+    @Volatile
+    var bytesReceived = 0L
+        internal set
+
+    @Volatile
+    var bytesSkipped = 0L
+        internal set
+
+    override fun toString(): String {
+        return "FrameStats(framesOk=$framesOk, invalidChecksum=$invalidChecksum, invalidFrames=$invalidFrames, " +
+                "resyncs=$resyncs, bytesReceived=$bytesReceived, bytesSkipped=$bytesSkipped)"
+    }
+}
@@ -0,0 +1,259 @@
+package com.dix.codec.bkv.bind;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.CodecUtil;
+import com.dix.codec.bkv.KV;
+import com.dix.codec.bkv.exception.InvalidValueTypeException;
+import com.dix.codec.bkv.exception.PackKVFailException;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Packs and unpacks objects with {@link BKVField} fields straight from and into kv bytes,
+ * without intermediate {@link BKV} and {@link KV} objects.
+ * <p>
+ * {@link #of(Class)} uses the codec generated by the bkv-processor annotation processor if it is on the class path,
+ * a class in the same package named after the bound class with a BKVCodec suffix, e.g. Outer_InnerBKVCodec for
+ * Outer.Inner, and falls back to a reflective codec otherwise.
+ * Codecs are stateless and thread safe.
+ */
+public abstract class BKVCodec<T> {
+    public static final String SUFFIX = "BKVCodec";
+
+    private static final ClassValue<BKVCodec<?>> codecs = new ClassValue<BKVCodec<?>>() {
+        @Override
+        protected BKVCodec<?> computeValue(Class<?> type) {
+            return create(type);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    public static <T> BKVCodec<T> of(Class<T> type) {
+        return (BKVCodec<T>) codecs.get(type);
+    }
+
+    /**
+     * Reflective codec of type, even if a generated one exists
+     */
+    public static <T> BKVCodec<T> reflective(Class<T> type) {
+        return new ReflectiveBKVCodec<>(type);
+    }
+
+    /**
+     * Binary name of the generated codec of a class with the binary name typeName
+     */
+    public static String generatedName(String typeName) {
+        int dot = typeName.lastIndexOf('.');
+        return typeName.substring(0, dot + 1) + typeName.substring(dot + 1).replace('$', '_') + SUFFIX;
+    }
+
+    private static BKVCodec<?> create(Class<?> type) {
+        Class<?> generated;
+        try {
+            generated = Class.forName(generatedName(type.getName()), true, type.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return new ReflectiveBKVCodec<>(type);
+        }
+
+        try {
+            return (BKVCodec<?>) generated.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("failed to create codec " + generated.getName(), e);
+        }
+    }
+
+    public abstract T newInstance();
+
+    /**
+     * Set the field bound to the number key from buf[offset, offset + length), kvs of unknown keys are ignored
+     */
+    protected abstract void decodeNumberKey(T target, long key, byte[] buf, int offset, int length);
+
+    /**
+     * Set the field bound to the string key in buf[keyOffset, keyOffset + keyLength)
+     * from buf[valueOffset, valueOffset + valueLength), kvs of unknown keys are ignored
+     */
+    protected abstract void decodeStringKey(T target, byte[] buf, int keyOffset, int keyLength, int valueOffset, int valueLength);
+
+    /**
+     * Count of bytes {@link #encode(Object)} produces for value
+     */
+    public abstract int encodedSize(T value);
+
+    /**
+     * Pack the fields of value into dst at offset, dst has room for {@link #encodedSize(Object)} bytes,
+     * returns the offset after the packed bytes
+     */
+    protected abstract int encodeTo(T value, byte[] dst, int offset);
+
+    public T decode(byte[] buf) {
+        return decode(buf, 0, buf.length);
+    }
+
+    public T decode(byte[] buf, int offset, int limit) {
+        T target = newInstance();
+        decodeInto(target, buf, offset, limit);
+        return target;
+    }
+
+    /**
+     * Decode the bytes from the position to the limit of buf, the position is advanced to the first byte failed
+     * to unpack. Buffers without an accessible array are copied first
+     */
+    public T decode(ByteBuffer buf) {
+        T target = newInstance();
+        int position = buf.position();
+        if (buf.hasArray()) {
+            int arrayOffset = buf.arrayOffset();
+            int end = decodeInto(target, buf.array(), arrayOffset + position, arrayOffset + buf.limit());
+            ((Buffer) buf).position(end - arrayOffset);
+        } else {
+            byte[] bytes = CodecUtil.copyOfRange(buf, position, buf.remaining());
+            ((Buffer) buf).position(position + decodeInto(target, bytes, 0, bytes.length));
+        }
+
+        return target;
+    }
+
+    /**
+     * Set the bound fields of target from the kvs in buf[offset, limit), later kvs of the same key win,
+     * returns the offset of the first byte failed to unpack
+     */
+    public int decodeInto(T target, byte[] buf, int offset, int limit) {
+        if (offset < 0 || limit > buf.length || offset > limit) {
+            throw new IndexOutOfBoundsException(String.format("offset=%d, limit=%d, length=%d", offset, limit, buf.length));
+        }
+
+        return CodecUtil.forEachKV(buf, offset, limit, (keyLengthByte, keyOffset, valueLength) -> {
+            int keyLength = keyLengthByte & 0x7F;
+            int valueOffset = keyOffset + keyLength;
+            if ((keyLengthByte & 0x80) != 0) {
+                decodeStringKey(target, buf, keyOffset, keyLength, valueOffset, valueLength);
+            } else if (keyLength <= 8) {
+                decodeNumberKey(target, CodecUtil.decodeNumber(buf, keyOffset, keyLength), buf, valueOffset, valueLength);
+            }
+        });
+    }
+
+    public byte[] encode(T value) {
+        byte[] buf = new byte[encodedSize(value)];
+        encodeTo(value, buf, 0);
+        return buf;
+    }
+
+    /**
+     * Pack value into dst at offset, returns the offset after the packed bytes
+     */
+    public int encode(T value, byte[] dst, int offset) throws PackKVFailException {
+        int size = encodedSize(value);
+        if (offset < 0 || dst.length - offset < size) {
+            throw new PackKVFailException(String.format("buffer too small, size=%d, offset=%d, bufLength=%d", size, offset, dst.length));
+        }
+
+        return encodeTo(value, dst, offset);
+    }
+
+    /**
+     * Pack value into dst at its position, the position is advanced by the packed bytes
+     */
+    public void encode(T value, ByteBuffer dst) throws PackKVFailException {
+        int size = encodedSize(value);
+        if (dst.remaining() < size) {
+            throw new PackKVFailException(String.format("buffer too small, size=%d, remaining=%d", size, dst.remaining()));
+        }
+
+        if (dst.hasArray()) {
+            int position = dst.position();
+            encodeTo(value, dst.array(), dst.arrayOffset() + position);
+            ((Buffer) dst).position(position + size);
+        } else {
+            byte[] buf = new byte[size];
+            encodeTo(value, buf, 0);
+            dst.put(buf);
+        }
+    }
+
+    // helpers of generated codecs
+
+    protected static boolean keyEquals(byte[] buf, int offset, int length, byte[] key) {
+        if (length != key.length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (buf[offset + i] != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    protected static float floatValue(byte[] buf, int offset, int length) {
+        if (length < 4) {
+            throw new InvalidValueTypeException();
+        }
+        return CodecUtil.decodeFloat(buf, offset);
+    }
+
+    protected static double doubleValue(byte[] buf, int offset, int length) {
+        switch (length) {
+            case 8: return CodecUtil.decodeDouble(buf, offset);
+            case 4: return CodecUtil.decodeFloat(buf, offset);
+            default: throw new InvalidValueTypeException();
+        }
+    }
+
+    protected static String stringValue(byte[] buf, int offset, int length) {
+        return new String(buf, offset, length, StandardCharsets.UTF_8);
+    }
+
+    protected static byte[] bytesValue(byte[] buf, int offset, int length) {
+        return Arrays.copyOfRange(buf, offset, offset + length);
+    }
+
+    protected static byte[] stringBytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected static int kvSize(byte[] key, int valueLength) {
+        int totalLength = 1 + key.length + valueLength;
+        return CodecUtil.encodedLengthSize(totalLength) + totalLength;
+    }
+
+    protected static int numberSize(byte[] key, long value) {
+        return kvSize(key, CodecUtil.encodedNumberSize(value));
+    }
+
+    /**
+     * Write the length and key of a kv, returns the offset of the value. Keys are at most 0x7F bytes, checked when bound
+     */
+    protected static int putKey(byte[] dst, int offset, byte[] key, boolean isStringKey, int valueLength) {
+        int p = CodecUtil.encodeLength(1 + key.length + valueLength, dst, offset);
+        dst[p++] = (byte) (isStringKey ? key.length | 0x80 : key.length);
+        System.arraycopy(key, 0, dst, p, key.length);
+        return p + key.length;
+    }
+
+    protected static int putNumber(byte[] dst, int offset, byte[] key, boolean isStringKey, long value) {
+        int p = putKey(dst, offset, key, isStringKey, CodecUtil.encodedNumberSize(value));
+        return CodecUtil.encodeNumber(value, dst, p);
+    }
+
+    protected static int putFloat(byte[] dst, int offset, byte[] key, boolean isStringKey, float value) {
+        return CodecUtil.encodeFloat(value, dst, putKey(dst, offset, key, isStringKey, 4));
+    }
+
+    protected static int putDouble(byte[] dst, int offset, byte[] key, boolean isStringKey, double value) {
+        return CodecUtil.encodeDouble(value, dst, putKey(dst, offset, key, isStringKey, 8));
+    }
+
+    protected static int putBytes(byte[] dst, int offset, byte[] key, boolean isStringKey, byte[] value) {
+        int p = putKey(dst, offset, key, isStringKey, value.length);
+        System.arraycopy(value, 0, dst, p, value.length);
+        return p + value.length;
+    }
+}
@@ -0,0 +1,22 @@
+package com.dix.codec.bkv.bind;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bind a field to the kv with a number key, or with a string key when name is set, see {@link BKVCodec}.
+ * <p>
+ * Supported field types are long, int, short, byte, boolean, float, double, their boxed types, String and byte[].
+ * Null boxed, String and byte[] fields are not packed.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface BKVField {
+    long key() default -1;
+
+    String name() default "";
+}
@@ -0,0 +1,296 @@
+package com.dix.codec.bkv.bind;
+
+import com.dix.codec.bkv.CodecUtil;
+import com.dix.codec.bkv.exception.InvalidKeyTypeException;
+import com.dix.codec.bkv.exception.InvalidValueTypeException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fallback codec setting and getting {@link BKVField} fields through reflection,
+ * number keys below {@link #DENSE_LIMIT} are looked up in a table indexed by the key
+ */
+final class ReflectiveBKVCodec<T> extends BKVCodec<T> {
+    private static final int DENSE_LIMIT = 256;
+
+    private static final int LONG = 0;
+    private static final int INT = 1;
+    private static final int SHORT = 2;
+    private static final int BYTE = 3;
+    private static final int BOOLEAN = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int STRING = 7;
+    private static final int BYTES = 8;
+
+    private static final class Binding {
+        final Field field;
+        final int type;
+        final boolean boxed;
+        final boolean isStringKey;
+        final long numberKey;
+        final byte[] key;
+
+        Binding(Field field, int type, boolean boxed, boolean isStringKey, long numberKey, byte[] key) {
+            this.field = field;
+            this.type = type;
+            this.boxed = boxed;
+            this.isStringKey = isStringKey;
+            this.numberKey = numberKey;
+            this.key = key;
+        }
+    }
+
+    private final Constructor<T> constructor;
+    private final Binding[] bindings;
+    private final Binding[] denseNumberBindings;
+    private final Binding[] sparseNumberBindings; // sorted by key
+    private final long[] sparseNumberKeys;
+    private final Binding[] stringBindings;
+
+    ReflectiveBKVCodec(Class<T> type) {
+        try {
+            this.constructor = type.getDeclaredConstructor();
+            this.constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("no default constructor: " + type.getName(), e);
+        }
+
+        List<Binding> bindings = new ArrayList<>();
+        collect(type, bindings);
+        this.bindings = bindings.toArray(new Binding[0]);
+
+        // same check as the generated codecs, a key bound twice would be packed twice and unpacked into one field
+        Set<Object> keys = new HashSet<>();
+        for (Binding binding : this.bindings) {
+            if (!keys.add(binding.isStringKey ? ByteBuffer.wrap(binding.key) : (Object) binding.numberKey)) {
+                throw new InvalidKeyTypeException("duplicate key: " + binding.field);
+            }
+        }
+
+        List<Binding> dense = new ArrayList<>();
+        List<Binding> sparse = new ArrayList<>();
+        List<Binding> strings = new ArrayList<>();
+        for (Binding binding : this.bindings) {
+            if (binding.isStringKey) {
+                strings.add(binding);
+            } else if (binding.numberKey < DENSE_LIMIT) {
+                dense.add(binding);
+            } else {
+                sparse.add(binding);
+            }
+        }
+
+        int denseSize = 0;
+        for (Binding binding : dense) {
+            denseSize = Math.max(denseSize, (int) binding.numberKey + 1);
+        }
+        this.denseNumberBindings = new Binding[denseSize];
+        for (Binding binding : dense) {
+            this.denseNumberBindings[(int) binding.numberKey] = binding;
+        }
+
+        sparse.sort((a, b) -> Long.compare(a.numberKey, b.numberKey));
+        this.sparseNumberBindings = sparse.toArray(new Binding[0]);
+        this.sparseNumberKeys = new long[sparse.size()];
+        for (int i = 0; i < sparse.size(); i++) {
+            this.sparseNumberKeys[i] = sparse.get(i).numberKey;
+        }
+
+        this.stringBindings = strings.toArray(new Binding[0]);
+    }
+
+    private static void collect(Class<?> type, List<Binding> bindings) {
+        if (type.getSuperclass() != null && type.getSuperclass() != Object.class) {
+            collect(type.getSuperclass(), bindings);
+        }
+
+        for (Field field : type.getDeclaredFields()) {
+            BKVField annotation = field.getAnnotation(BKVField.class);
+            if (annotation == null) {
+                continue;
+            }
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                throw new IllegalArgumentException("static or final field can not be bound: " + field);
+            }
+
+            boolean isStringKey = !annotation.name().isEmpty();
+            if (isStringKey == annotation.key() >= 0) {
+                throw new InvalidKeyTypeException("either key or name must be set: " + field);
+            }
+
+            byte[] key = isStringKey ? stringBytes(annotation.name()) : CodecUtil.encodeNumber(annotation.key());
+            if (key.length > 0x7F) {
+                throw new InvalidKeyTypeException("key name longer than 127 bytes: " + field);
+            }
+            field.setAccessible(true);
+            Class<?> fieldType = field.getType();
+            bindings.add(new Binding(field, typeOf(field), !fieldType.isPrimitive() && fieldType != String.class && fieldType != byte[].class,
+                    isStringKey, annotation.key(), key));
+        }
+    }
+
+    private static int typeOf(Field field) {
+        Class<?> type = field.getType();
+        if (type == long.class || type == Long.class) {
+            return LONG;
+        } else if (type == int.class || type == Integer.class) {
+            return INT;
+        } else if (type == short.class || type == Short.class) {
+            return SHORT;
+        } else if (type == byte.class || type == Byte.class) {
+            return BYTE;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return BOOLEAN;
+        } else if (type == float.class || type == Float.class) {
+            return FLOAT;
+        } else if (type == double.class || type == Double.class) {
+            return DOUBLE;
+        } else if (type == String.class) {
+            return STRING;
+        } else if (type == byte[].class) {
+            return BYTES;
+        }
+
+        throw new IllegalArgumentException("unsupported field type: " + field);
+    }
+
+    @Override
+    public T newInstance() {
+        try {
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("failed to create " + constructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    @Override
+    protected void decodeNumberKey(T target, long key, byte[] buf, int offset, int length) {
+        Binding binding = null;
+        if (key >= 0 && key < denseNumberBindings.length) {
+            binding = denseNumberBindings[(int) key];
+        } else if (sparseNumberKeys.length > 0) {
+            int i = Arrays.binarySearch(sparseNumberKeys, key);
+            if (i >= 0) {
+                binding = sparseNumberBindings[i];
+            }
+        }
+
+        if (binding != null) {
+            set(target, binding, buf, offset, length);
+        }
+    }
+
+    @Override
+    protected void decodeStringKey(T target, byte[] buf, int keyOffset, int keyLength, int valueOffset, int valueLength) {
+        for (Binding binding : stringBindings) {
+            if (keyEquals(buf, keyOffset, keyLength, binding.key)) {
+                set(target, binding, buf, valueOffset, valueLength);
+                return;
+            }
+        }
+    }
+
+    private static void set(Object target, Binding binding, byte[] buf, int offset, int length) {
+        Field field = binding.field;
+        try {
+            if (binding.boxed) {
+                field.set(target, value(binding.type, buf, offset, length));
+                return;
+            }
+
+            switch (binding.type) {
+                case LONG: field.setLong(target, CodecUtil.decodeNumber(buf, offset, length)); break;
+                case INT: field.setInt(target, (int) CodecUtil.decodeNumber(buf, offset, length)); break;
+                case SHORT: field.setShort(target, (short) CodecUtil.decodeNumber(buf, offset, length)); break;
+                case BYTE: field.setByte(target, (byte) CodecUtil.decodeNumber(buf, offset, length)); break;
+                case BOOLEAN: field.setBoolean(target, CodecUtil.decodeBoolean(buf, offset, length)); break;
+                case FLOAT: field.setFloat(target, floatValue(buf, offset, length)); break;
+                case DOUBLE: field.setDouble(target, doubleValue(buf, offset, length)); break;
+                default: field.set(target, value(binding.type, buf, offset, length));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object value(int type, byte[] buf, int offset, int length) {
+        switch (type) {
+            case LONG: return CodecUtil.decodeNumber(buf, offset, length);
+            case INT: return (int) CodecUtil.decodeNumber(buf, offset, length);
+            case SHORT: return (short) CodecUtil.decodeNumber(buf, offset, length);
+            case BYTE: return (byte) CodecUtil.decodeNumber(buf, offset, length);
+            case BOOLEAN: return CodecUtil.decodeBoolean(buf, offset, length);
+            case FLOAT: return floatValue(buf, offset, length);
+            case DOUBLE: return doubleValue(buf, offset, length);
+            case STRING: return stringValue(buf, offset, length);
+            case BYTES: return bytesValue(buf, offset, length);
+            default: throw new InvalidValueTypeException();
+        }
+    }
+
+    @Override
+    public int encodedSize(T value) {
+        int size = 0;
+        for (Binding binding : bindings) {
+            Object v = get(value, binding);
+            if (v == null) {
+                continue;
+            }
+
+            switch (binding.type) {
+                case FLOAT: size += kvSize(binding.key, 4); break;
+                case DOUBLE: size += kvSize(binding.key, 8); break;
+                case STRING: size += kvSize(binding.key, stringBytes((String) v).length); break;
+                case BYTES: size += kvSize(binding.key, ((byte[]) v).length); break;
+                default: size += numberSize(binding.key, numberOf(binding.type, v));
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    protected int encodeTo(T value, byte[] dst, int offset) {
+        for (Binding binding : bindings) {
+            Object v = get(value, binding);
+            if (v == null) {
+                continue;
+            }
+
+            switch (binding.type) {
+                case FLOAT: offset = putFloat(dst, offset, binding.key, binding.isStringKey, (Float) v); break;
+                case DOUBLE: offset = putDouble(dst, offset, binding.key, binding.isStringKey, (Double) v); break;
+                case STRING: offset = putBytes(dst, offset, binding.key, binding.isStringKey, stringBytes((String) v)); break;
+                case BYTES: offset = putBytes(dst, offset, binding.key, binding.isStringKey, (byte[]) v); break;
+                default: offset = putNumber(dst, offset, binding.key, binding.isStringKey, numberOf(binding.type, v));
+            }
+        }
+
+        return offset;
+    }
+
+    private static Object get(Object target, Binding binding) {
+        try {
+            return binding.field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long numberOf(int type, Object v) {
+        if (type == BOOLEAN) {
+            return (Boolean) v ? 1 : 0;
+        }
+
+        return ((Number) v).longValue();
+    }
+}
@@ -0,0 +1,7 @@
+package com.dix.codec.bkv.exception;
+
+public class InvalidCompressedValueException extends RuntimeException {
+    public InvalidCompressedValueException(String message) {
+        super(message);
+    }
+}
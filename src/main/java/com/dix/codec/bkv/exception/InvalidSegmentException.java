@@ -0,0 +1,7 @@
+package com.dix.codec.bkv.exception;
+
+public class InvalidSegmentException extends RuntimeException {
+    public InvalidSegmentException(String message) {
+        super(message);
+    }
+}
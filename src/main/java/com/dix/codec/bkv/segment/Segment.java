@@ -0,0 +1,54 @@
+package com.dix.codec.bkv.segment;
+
+import com.dix.codec.bkv.exception.InvalidSegmentException;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of a BKV segment file, an 8 bytes header followed by records:
+ * <pre>
+ * header: "BKVS" | version | flags | 2 reserved bytes
+ * record: length | packed BKV of length bytes
+ * </pre>
+ * The record length uses the varint encoding of kv lengths, a zero length byte marks the end of the records.
+ */
+public final class Segment {
+    public static final byte[] MAGIC = {'B', 'K', 'V', 'S'};
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private Segment() {
+    }
+
+    static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).put(VERSION);
+        ((Buffer) header).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    static void readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new InvalidSegmentException("incomplete segment header");
+            }
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header.get(i) != MAGIC[i]) {
+                throw new InvalidSegmentException("invalid segment magic");
+            }
+        }
+        if (header.get(MAGIC.length) != VERSION) {
+            throw new InvalidSegmentException(String.format("unsupported segment version, version=%d", header.get(MAGIC.length)));
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.dix.codec.bkv.segment;
+
+import com.dix.codec.bkv.BKVView;
+import com.dix.codec.bkv.exception.InvalidSegmentException;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index of a segment file, kept in a sidecar file next to the segment.
+ * One entry is stored every interval records, holding the record number and file offset of the first record of
+ * the block, and optionally the min and max value of a number key in the block:
+ * <pre>
+ * header: "BKVI" | version | flags | 2 reserved bytes | interval (4) | 4 reserved bytes | key (8) | end (8) | file size (8)
+ * entry:  record number (8) | offset (8) | min (8) | max (8)
+ * </pre>
+ * End is the offset after the last valid record and file size the length of the segment file when the index was
+ * built, they differ for a torn tail or a segment still preallocated by a {@link SegmentWriter}.
+ * Blocks without the key have min = Long.MAX_VALUE and max = Long.MIN_VALUE.
+ */
+public final class SegmentIndex {
+    public static final byte[] MAGIC = {'B', 'K', 'V', 'I'};
+    public static final byte VERSION = 2;
+    public static final int HEADER_SIZE = 40;
+    public static final int ENTRY_SIZE = 32;
+
+    private static final byte FLAG_KEY = 0x01;
+
+    private final int interval;
+    private final boolean hasKey;
+    private final long key;
+    private final long end;
+    private final long fileSize;
+    private final int size;
+    private final long[] recordNumbers;
+    private final long[] offsets;
+    private final long[] mins;
+    private final long[] maxs;
+    private final long[] prefixMaxs; // max of all blocks up to and including i, for value seeks
+
+    private SegmentIndex(int interval, boolean hasKey, long key, long end, long fileSize, int size,
+                         long[] recordNumbers, long[] offsets, long[] mins, long[] maxs) {
+        this.interval = interval;
+        this.hasKey = hasKey;
+        this.key = key;
+        this.end = end;
+        this.fileSize = fileSize;
+        this.size = size;
+        this.recordNumbers = recordNumbers;
+        this.offsets = offsets;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.prefixMaxs = new long[size];
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, maxs[i]);
+            prefixMaxs[i] = max;
+        }
+    }
+
+    public static Path sidecarPath(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + ".idx");
+    }
+
+    /**
+     * Load the sidecar index of segment, it is rebuilt and rewritten when missing, built with other options,
+     * or the segment changed: another file size, or a record appended after the end of the index
+     */
+    public static SegmentIndex open(Path segment, int interval) throws IOException {
+        return open(segment, interval, false, 0);
+    }
+
+    public static SegmentIndex open(Path segment, int interval, long key) throws IOException {
+        return open(segment, interval, true, key);
+    }
+
+    private static SegmentIndex open(Path segment, int interval, boolean hasKey, long key) throws IOException {
+        Path sidecar = sidecarPath(segment);
+        if (Files.exists(sidecar)) {
+            try {
+                SegmentIndex index = load(sidecar);
+                if (index.interval == interval && index.hasKey == hasKey && index.key == key && index.isCurrent(segment)) {
+                    return index;
+                }
+            } catch (InvalidSegmentException e) {
+                // rebuild below
+            }
+        }
+
+        SegmentIndex index = build(segment, interval, hasKey, key);
+        index.write(sidecar);
+        return index;
+    }
+
+    /**
+     * Scan segment and build its index in memory
+     */
+    public static SegmentIndex build(Path segment, int interval) throws IOException {
+        return build(segment, interval, false, 0);
+    }
+
+    public static SegmentIndex build(Path segment, int interval, long key) throws IOException {
+        return build(segment, interval, true, key);
+    }
+
+    private static SegmentIndex build(Path segment, int interval, boolean hasKey, long key) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+
+        int capacity = 16;
+        long[] recordNumbers = new long[capacity];
+        long[] offsets = new long[capacity];
+        long[] mins = new long[capacity];
+        long[] maxs = new long[capacity];
+        int size = 0;
+
+        long end;
+        long fileSize;
+        try (SegmentReader reader = SegmentReader.open(segment)) {
+            fileSize = Files.size(segment);
+            while (true) {
+                long recordNumber = reader.getRecordNumber();
+                long offset = reader.position();
+                BKVView view = reader.nextView();
+                if (view == null) {
+                    break;
+                }
+
+                if (recordNumber % interval == 0) {
+                    if (size == capacity) {
+                        capacity <<= 1;
+                        recordNumbers = Arrays.copyOf(recordNumbers, capacity);
+                        offsets = Arrays.copyOf(offsets, capacity);
+                        mins = Arrays.copyOf(mins, capacity);
+                        maxs = Arrays.copyOf(maxs, capacity);
+                    }
+                    recordNumbers[size] = recordNumber;
+                    offsets[size] = offset;
+                    mins[size] = Long.MAX_VALUE;
+                    maxs[size] = Long.MIN_VALUE;
+                    size++;
+                }
+
+                if (hasKey) {
+                    if (view.indexOf(key) >= 0) {
+                        long value = view.getLong(key, 0);
+                        mins[size - 1] = Math.min(mins[size - 1], value);
+                        maxs[size - 1] = Math.max(maxs[size - 1], value);
+                    }
+                }
+            }
+            end = reader.position();
+        }
+
+        return new SegmentIndex(interval, hasKey, key, end, fileSize, size, recordNumbers, offsets, mins, maxs);
+    }
+
+    public static SegmentIndex load(Path sidecar) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(sidecar));
+        if (buf.remaining() < HEADER_SIZE || (buf.remaining() - HEADER_SIZE) % ENTRY_SIZE != 0) {
+            throw new InvalidSegmentException("invalid index size");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.get(i) != MAGIC[i]) {
+                throw new InvalidSegmentException("invalid index magic");
+            }
+        }
+        if (buf.get(4) != VERSION) {
+            throw new InvalidSegmentException(String.format("unsupported index version, version=%d", buf.get(4)));
+        }
+
+        boolean hasKey = (buf.get(5) & FLAG_KEY) != 0;
+        int interval = buf.getInt(8);
+        long key = buf.getLong(16);
+        long end = buf.getLong(24);
+        long fileSize = buf.getLong(32);
+
+        int size = (buf.remaining() - HEADER_SIZE) / ENTRY_SIZE;
+        long[] recordNumbers = new long[size];
+        long[] offsets = new long[size];
+        long[] mins = new long[size];
+        long[] maxs = new long[size];
+        ((Buffer) buf).position(HEADER_SIZE);
+        for (int i = 0; i < size; i++) {
+            recordNumbers[i] = buf.getLong();
+            offsets[i] = buf.getLong();
+            mins[i] = buf.getLong();
+            maxs[i] = buf.getLong();
+        }
+
+        return new SegmentIndex(interval, hasKey, key, end, fileSize, size, recordNumbers, offsets, mins, maxs);
+    }
+
+    /**
+     * True if segment has the file size of the index and still no valid record at its end,
+     * a writer keeps the file size while it appends into the preallocated window
+     */
+    private boolean isCurrent(Path segment) throws IOException {
+        if (Files.size(segment) != fileSize) {
+            return false;
+        }
+
+        try (SegmentReader reader = SegmentReader.open(segment)) {
+            reader.seek(end, 0);
+            return reader.nextView() == null;
+        }
+    }
+
+    public void write(Path sidecar) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + size * ENTRY_SIZE);
+        buf.put(MAGIC).put(VERSION).put(hasKey ? FLAG_KEY : 0);
+        buf.putInt(8, interval).putLong(16, key).putLong(24, end).putLong(32, fileSize);
+        ((Buffer) buf).position(HEADER_SIZE);
+        for (int i = 0; i < size; i++) {
+            buf.putLong(recordNumbers[i]).putLong(offsets[i]).putLong(mins[i]).putLong(maxs[i]);
+        }
+        ((Buffer) buf).flip();
+
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Move reader to record number n, false if the segment has fewer records
+     */
+    public boolean seekRecord(SegmentReader reader, long n) throws IOException {
+        int i = Arrays.binarySearch(recordNumbers, 0, size, n);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        if (i < 0) {
+            return false;
+        }
+
+        reader.seek(offsets[i], recordNumbers[i]);
+        while (reader.getRecordNumber() < n) {
+            if (!reader.skip()) {
+                return false;
+            }
+        }
+
+        long offset = reader.position();
+        if (!reader.skip()) {
+            return false;
+        }
+
+        reader.seek(offset, n);
+        return true;
+    }
+
+    /**
+     * Move reader to the first record whose key value is not less than value, false if there is none.
+     * Blocks whose max value and the max values of all blocks before are less than value are skipped,
+     * the rest is decoded forward from there
+     */
+    public boolean seekValue(SegmentReader reader, long value) throws IOException {
+        if (!hasKey) {
+            throw new IllegalStateException("index is built without a key");
+        }
+
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefixMaxs[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == size) {
+            return false;
+        }
+
+        reader.seek(offsets[lo], recordNumbers[lo]);
+        while (true) {
+            long recordNumber = reader.getRecordNumber();
+            long offset = reader.position();
+            BKVView view = reader.nextView();
+            if (view == null) {
+                return false;
+            }
+            if (view.indexOf(key) >= 0 && view.getLong(key, 0) >= value) {
+                reader.seek(offset, recordNumber);
+                return true;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public long getRecordNumber(int index) {
+        return recordNumbers[index];
+    }
+
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    public long getMin(int index) {
+        return mins[index];
+    }
+
+    public long getMax(int index) {
+        return maxs[index];
+    }
+}
@@ -0,0 +1,189 @@
+package com.dix.codec.bkv.segment;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.BKVView;
+import com.dix.codec.bkv.CodecUtil;
+import com.dix.codec.bkv.UnpackBKVResult;
+import com.dix.codec.bkv.exception.InvalidLengthException;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential reader of a BKV segment file, records are decoded straight from a read-only mapped window of the file,
+ * the window slides forward as records are read, so segments larger than the address space of one mapping work.
+ * Reading stops at the end of the file, at a zero length byte or at the first record failed to unpack,
+ * {@link #position()} is then the end of the valid records.
+ * Not thread safe.
+ */
+public class SegmentReader implements Closeable {
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position = Segment.HEADER_SIZE;
+    private long recordNumber;
+
+    private SegmentReader(FileChannel channel, int windowSize) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    public static SegmentReader open(Path path) throws IOException {
+        return open(path, Segment.DEFAULT_WINDOW_SIZE);
+    }
+
+    public static SegmentReader open(Path path, int windowSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Segment.readHeader(channel);
+            return new SegmentReader(channel, windowSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Next record as a view over the mapped file without copying, null after the last record.
+     * The view must not be used after the segment file is truncated or deleted
+     */
+    @Nullable
+    public BKVView nextView() throws IOException {
+        long recordPosition = position;
+        ByteBuffer record = nextRecord();
+        if (record == null) {
+            return null;
+        }
+
+        BKVView view = BKVView.unpack(record);
+        if (record.hasRemaining()) {
+            rewind(recordPosition);
+            return null;
+        }
+
+        return view;
+    }
+
+    /**
+     * Next record copied into a {@link BKV}, null after the last record
+     */
+    @Nullable
+    public BKV next() throws IOException {
+        long recordPosition = position;
+        ByteBuffer record = nextRecord();
+        if (record == null) {
+            return null;
+        }
+
+        UnpackBKVResult result = BKV.unpack(record);
+        if (result.getRemainingLength() > 0) {
+            rewind(recordPosition);
+            return null;
+        }
+
+        return result.getBKV();
+    }
+
+    /**
+     * File offset of the next record
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Count of records read
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Move to the record at file offset position, which is record number recordNumber
+     */
+    void seek(long position, long recordNumber) {
+        this.position = position;
+        this.recordNumber = recordNumber;
+    }
+
+    /**
+     * Move past the next record without unpacking it, false after the last record
+     */
+    boolean skip() throws IOException {
+        return nextRecord() != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Body of the next record with position and limit set in the window, null at the end of the records
+     */
+    @Nullable
+    private ByteBuffer nextRecord() throws IOException {
+        long remaining = size - position;
+        if (remaining <= 0 || !map(position, (int) Math.min(4, remaining))) {
+            return null;
+        }
+
+        int index = (int) (position - windowStart);
+        int lengthByteSize;
+        try {
+            lengthByteSize = CodecUtil.decodeLengthSize(window, index, window.limit());
+        } catch (InvalidLengthException e) {
+            return null;
+        }
+
+        long length = CodecUtil.decodeLengthValue(window, index, lengthByteSize);
+        if (length == 0 || length > remaining - lengthByteSize) {
+            return null;
+        }
+
+        int recordSize = lengthByteSize + (int) length;
+        map(position, recordSize);
+        index = (int) (position - windowStart);
+
+        ByteBuffer record = window.duplicate();
+        ((Buffer) record).limit(index + recordSize).position(index + lengthByteSize);
+        position += recordSize;
+        recordNumber++;
+
+        return record;
+    }
+
+    private void rewind(long recordPosition) {
+        position = recordPosition;
+        recordNumber--;
+    }
+
+    /**
+     * Make file[start, start + length) readable in the window, false if the file is shorter
+     */
+    private boolean map(long start, int length) throws IOException {
+        if (window != null && start >= windowStart && start + length <= windowStart + window.limit()) {
+            return true;
+        }
+
+        long mapSize = Math.min(Math.max(windowSize, length), size - start);
+        if (mapSize < length) {
+            return false;
+        }
+
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, mapSize);
+        windowStart = start;
+        return true;
+    }
+}
@@ -0,0 +1,176 @@
+package com.dix.codec.bkv.segment;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.CodecUtil;
+import com.dix.codec.bkv.exception.InvalidSegmentException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only writer of a BKV segment file, records are packed straight into a mapped window of the file,
+ * which is grown window by window and truncated to the last record on {@link #close()}.
+ * <p>
+ * Appended records are durable after {@link #commit()}, which syncs all records appended since the last commit
+ * at once, so append a batch and commit once instead of syncing every record.
+ * Not thread safe.
+ */
+public class SegmentWriter implements Closeable {
+    private final FileChannel channel;
+    private final int windowSize;
+    private final int commitRecords;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private long recordCount;
+    private int uncommittedRecords;
+
+    private SegmentWriter(FileChannel channel, int windowSize, int commitRecords, long position, long recordCount) {
+        this.channel = channel;
+        this.windowSize = windowSize;
+        this.commitRecords = commitRecords;
+        this.position = position;
+        this.recordCount = recordCount;
+    }
+
+    public static SegmentWriter open(Path path) throws IOException {
+        return open(path, Segment.DEFAULT_WINDOW_SIZE, 0);
+    }
+
+    /**
+     * Create a segment, or reopen one and append after its last valid record.
+     * With commitRecords > 0 a commit is also made every commitRecords appends
+     */
+    public static SegmentWriter open(Path path, int windowSize, int commitRecords) throws IOException {
+        long position = Segment.HEADER_SIZE;
+        long recordCount = 0;
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                Segment.writeHeader(channel);
+            } else {
+                try (SegmentReader reader = SegmentReader.open(path, windowSize)) {
+                    while (reader.nextView() != null) {
+                        // skip to the end of the valid records
+                    }
+                    position = reader.position();
+                    recordCount = reader.getRecordNumber();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        return new SegmentWriter(channel, windowSize, commitRecords, position, recordCount);
+    }
+
+    /**
+     * Append bkv as one record, returns the file offset of the record
+     */
+    public long append(BKV bkv) throws IOException {
+        int length = bkv.encodedSize();
+        checkLength(length);
+
+        long recordPosition = position;
+        reserve(CodecUtil.encodedLengthSize(length) + length);
+        try {
+            CodecUtil.encodeLength(length, window);
+            bkv.packTo(window);
+        } catch (RuntimeException e) {
+            ((Buffer) window).position((int) (position - windowStart));
+            throw e;
+        }
+
+        return appended(recordPosition);
+    }
+
+    /**
+     * Append already packed kvs in buf[offset, offset + length) as one record, returns the file offset of the record
+     */
+    public long append(byte[] buf, int offset, int length) throws IOException {
+        checkLength(length);
+
+        long recordPosition = position;
+        reserve(CodecUtil.encodedLengthSize(length) + length);
+        CodecUtil.encodeLength(length, window);
+        window.put(buf, offset, length);
+
+        return appended(recordPosition);
+    }
+
+    /**
+     * Sync the records appended since the last commit to the storage device
+     */
+    public void commit() {
+        if (uncommittedRecords == 0) {
+            return;
+        }
+
+        window.force();
+        uncommittedRecords = 0;
+    }
+
+    /**
+     * File offset of the next record
+     */
+    public long position() {
+        return position;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Commit and truncate the file to the last record
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            commit();
+            window = null;
+            channel.truncate(position);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void checkLength(int length) {
+        if (length == 0) {
+            throw new InvalidSegmentException("empty record");
+        }
+    }
+
+    private long appended(long recordPosition) {
+        position = windowStart + window.position();
+        recordCount++;
+        uncommittedRecords++;
+        if (commitRecords > 0 && uncommittedRecords >= commitRecords) {
+            commit();
+        }
+
+        return recordPosition;
+    }
+
+    /**
+     * Make room for size bytes at position, records in the previous window are synced before it is dropped
+     */
+    private void reserve(int size) throws IOException {
+        if (window != null && window.remaining() >= size) {
+            return;
+        }
+
+        if (window != null && uncommittedRecords > 0) {
+            window.force();
+        }
+        window = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(windowSize, size));
+        windowStart = position;
+        ((Buffer) window).position(0);
+    }
+}
@@ -0,0 +1,129 @@
+package com.dix.codec.bkv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKVBatchTest {
+    private static byte[] frames(int count) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            BKV bkv = new BKV();
+            bkv.add(1, i);
+            // uneven frame sizes
+            bkv.add("payload", new byte[(i * 37) % 500]);
+            byte[] packed = bkv.pack();
+            out.write(CodecUtil.encodeLength(packed.length));
+            out.write(packed);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void decodeAll() throws IOException {
+        byte[] buf = frames(5000);
+        BKVBatch batch = BKVBatch.scan(buf);
+        assertEquals(5000, batch.size());
+        assertEquals(buf.length, batch.getEnd());
+
+        List<BKV> decoded = batch.decodeAll();
+        assertEquals(5000, decoded.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            assertEquals(i, decoded.get(i).getInt(1, -1));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<BKV> onExecutor = batch.decodeAll(executor, 3);
+            for (int i = 0; i < onExecutor.size(); i++) {
+                assertEquals(i, onExecutor.get(i).getInt(1, -1));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Integer> ids = batch.stream().map(bkv -> bkv.getInt(1, -1)).collect(Collectors.toList());
+        assertEquals(5000, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, (int) ids.get(i));
+        }
+        assertEquals(4999, batch.stream().filter(bkv -> bkv.getInt(1, -1) % 2 == 1).mapToInt(bkv -> bkv.getInt(1, -1)).max().getAsInt());
+    }
+
+    @Test
+    void scanStops() throws IOException {
+        byte[] buf = frames(10);
+        BKVBatch truncated = BKVBatch.scan(buf, 0, buf.length - 1);
+        assertEquals(9, truncated.size());
+        assertEquals(8, truncated.decodeAll().get(8).getInt(1, -1));
+
+        byte[] marked = new byte[buf.length + 10];
+        System.arraycopy(buf, 0, marked, 0, buf.length);
+        BKVBatch batch = BKVBatch.scan(marked);
+        assertEquals(10, batch.size());
+        assertEquals(buf.length, batch.getEnd());
+
+        assertEquals(0, BKVBatch.scan(new byte[0]).decodeAll().size());
+        assertEquals(0, BKVBatch.scan(new byte[]{ (byte) 0x81 }).size());
+    }
+
+    @Test
+    void scanByteBuffer() throws IOException {
+        byte[] buf = frames(1000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(buf.length + 3);
+        direct.position(3);
+        direct.put(buf).flip().position(3);
+
+        BKVBatch batch = BKVBatch.scan(direct);
+        assertEquals(1000, batch.size());
+        assertEquals(buf.length + 3, batch.getEnd());
+        assertEquals(3, direct.position());
+        List<BKV> decoded = batch.decodeAll();
+        assertEquals(999, decoded.get(999).getInt(1, -1));
+        assertEquals(500, batch.decode(500).getInt(1, -1));
+    }
+
+    @Test
+    void scanFrames() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{0x01, 0x02});
+        for (int i = 0; i < 100; i++) {
+            BKV bkv = new BKV();
+            bkv.add(1, i);
+            byte[] body = bkv.pack();
+            int sum = 0;
+            for (byte b : body) {
+                sum += b & 0xFF;
+            }
+
+            out.write(0xFF);
+            out.write(body.length + 1);
+            // every 10th frame has a bad checksum
+            out.write(i % 10 == 9 ? sum + 1 : sum);
+            out.write(body);
+        }
+        byte[] buf = out.toByteArray();
+
+        BKVBatch batch = BKVBatch.scanFrames(buf);
+        assertEquals(90, batch.size());
+        assertEquals(buf.length, batch.getEnd());
+        List<BKV> decoded = batch.decodeAll();
+        assertEquals(0, decoded.get(0).getInt(1, -1));
+        assertEquals(10, decoded.get(9).getInt(1, -1));
+        assertEquals(98, decoded.get(89).getInt(1, -1));
+
+        // the last frame is cut off, scanning stops at its head
+        BKVBatch truncated = BKVBatch.scanFrames(buf, 0, buf.length - 1);
+        assertEquals(90, truncated.size());
+        assertEquals((byte) 0xFF, buf[truncated.getEnd()]);
+        assertTrue(truncated.getEnd() > batch.getEnd() - 10);
+    }
+}
@@ -0,0 +1,172 @@
+package com.dix.codec.bkv;
+
+import com.dix.codec.bkv.exception.PackKVFailException;
+import com.dix.codec.bkv.exception.UnpackKVFailException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKVReaderTest {
+    private static final BKVKey NAME = BKVKey.of("name");
+
+    private static byte[] sample() throws IOException {
+        BKV bkv = new BKV();
+        bkv.add(1, 0x1234);
+        bkv.add("name", "sensor");
+        bkv.add(2, 1.5f);
+        bkv.add(3, 2.25);
+        bkv.add(4, new byte[100000]);
+        bkv.add(5, true);
+        return bkv.pack();
+    }
+
+    /**
+     * Stream returning at most 3 bytes per read and skipping nothing, to cross the window on every kv
+     */
+    private static InputStream trickle(byte[] buf) {
+        return new FilterInputStream(new ByteArrayInputStream(buf)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+
+            @Override
+            public long skip(long n) {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    void read() throws IOException {
+        byte[] buf = sample();
+        ByteBuffer direct = ByteBuffer.allocateDirect(buf.length);
+        direct.put(buf).flip();
+
+        for (BKVReader reader : new BKVReader[]{ BKVReader.of(buf), BKVReader.of(direct), BKVReader.of(trickle(buf)), BKVReader.of(new ByteArrayInputStream(buf)) }) {
+            assertTrue(reader.next());
+            assertFalse(reader.isStringKey());
+            assertEquals(1, reader.numberKey());
+            assertEquals(0x1234, reader.readLong());
+
+            assertTrue(reader.next());
+            assertTrue(reader.keyEquals(NAME));
+            assertEquals("name", reader.stringKey());
+            assertEquals(6, reader.valueLength());
+            assertEquals("sensor", reader.readString());
+
+            assertTrue(reader.next());
+            assertEquals(1.5f, reader.readFloat());
+            assertTrue(reader.next());
+            assertEquals(2.25, reader.readDouble());
+            assertThrows(IllegalStateException.class, reader::readDouble);
+
+            assertTrue(reader.next());
+            assertTrue(reader.keyEquals(CodecUtil.encodeNumber(4)));
+            assertEquals(100000, reader.valueLength());
+
+            assertTrue(reader.next());
+            assertTrue(reader.readBoolean());
+            assertFalse(reader.next());
+            assertFalse(reader.next());
+        }
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    void readTruncated() throws IOException {
+        byte[] buf = sample();
+        BKVReader reader = BKVReader.of(trickle(Arrays.copyOf(buf, 30)));
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        assertThrows(UnpackKVFailException.class, reader::next);
+
+        BKVReader chunked = BKVReader.of(Arrays.copyOf(buf, buf.length - 10));
+        while (chunked.next() && chunked.valueLength() < 100000) {
+        }
+        byte[] chunk = new byte[4096];
+        assertThrows(UnpackKVFailException.class, () -> {
+            while (chunked.readValue(chunk, 0, chunk.length) >= 0) {
+            }
+        });
+    }
+
+    @Test
+    void write() throws IOException {
+        byte[] buf = sample();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BKVWriter writer = new BKVWriter(out);
+        writer.writeLong(1, 0x1234);
+        writer.writeString(NAME, "sensor");
+        writer.writeFloat(2L, 1.5f);
+        writer.writeDouble(3, 2.25);
+        writer.writeHeader(4, 100000);
+        byte[] zeros = new byte[1000];
+        for (int i = 0; i < 100; i++) {
+            writer.writeRaw(zeros, 0, zeros.length);
+        }
+        writer.write(5, true);
+        writer.flush();
+        assertArrayEquals(buf, out.toByteArray());
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        try (BKVWriter channelWriter = new BKVWriter(Channels.newChannel(channelOut))) {
+            channelWriter.write(BKV.unpack(buf).getBKV());
+        }
+        assertArrayEquals(buf, channelOut.toByteArray());
+    }
+
+    @Test
+    void writeHeaderLimits() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BKVWriter writer = new BKVWriter(out);
+        assertThrows(PackKVFailException.class, () -> writer.writeHeader(1, -1));
+        assertThrows(PackKVFailException.class, () -> writer.writeHeader(1, 0x0FFFFFFF));
+        assertThrows(PackKVFailException.class, () -> writer.writeHeader("name", Integer.MAX_VALUE));
+
+        // largest value of a 1 byte key, still readable with a 4 byte length
+        writer.writeHeader(1, 0x0FFFFFFF - 2);
+        writer.flush();
+        BKVReader reader = BKVReader.of(out.toByteArray());
+        assertTrue(reader.next());
+        assertEquals(1, reader.numberKey());
+        assertEquals(0x0FFFFFFF - 2, reader.valueLength());
+    }
+
+    @Test
+    void transfer() throws IOException {
+        byte[] buf = sample();
+        BKV bkv = BKV.unpack(buf).getBKV();
+
+        // forward the kvs from the float on, once the name is seen
+        BKVReader reader = BKVReader.of(trickle(buf));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BKVWriter writer = new BKVWriter(out);
+        while (reader.next()) {
+            if (reader.keyEquals(NAME)) {
+                reader.skipValue();
+                reader.next();
+                reader.transferTo(writer);
+            }
+        }
+        writer.flush();
+
+        BKV rest = BKV.unpack(out.toByteArray()).getBKV();
+        assertEquals(4, rest.getItems().size());
+        assertEquals(1.5f, rest.getFloat(2, 0));
+        assertEquals(100000, rest.get(4).getValueLength());
+        assertArrayEquals(Arrays.copyOfRange(buf, bkv.getByIndex(0).encodedSize() + bkv.getByIndex(1).encodedSize(), buf.length), out.toByteArray());
+    }
+}
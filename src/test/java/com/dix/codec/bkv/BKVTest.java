@@ -1,15 +1,23 @@
 package com.dix.codec.bkv;
 
+import com.dix.codec.bkv.exception.InvalidCompressedValueException;
+import com.dix.codec.bkv.exception.InvalidKeyTypeException;
+import com.dix.codec.bkv.exception.InvalidValueTypeException;
+import com.dix.codec.bkv.exception.PackKVFailException;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class BKVTest {
     @Test
@@ -22,6 +30,30 @@ class BKVTest {
         assertEquals("0E010248656C6C6F2C20776F726C6405010203040506826464303132050163030405", CodecUtil.bytesToHex(bkv.pack()));
     }
 
+    @Test
+    void packTo() {
+        BKV bkv = new BKV();
+        bkv.add(new KV(0x02, "Hello, world".getBytes()));
+        bkv.add(new KV(0x02, new byte[]{ 0x03, 0x04, 0x05 }));
+        bkv.add(new KV("dd", "012".getBytes()));
+        bkv.add(new KV(99, new byte[]{ 0x03, 0x04, 0x05 }));
+        assertEquals(34, bkv.encodedSize());
+
+        byte[] buf = new byte[bkv.encodedSize() + 2];
+        assertEquals(buf.length - 1, bkv.packTo(buf, 1));
+        assertEquals("000E010248656C6C6F2C20776F726C640501020304050682646430313205016303040500", CodecUtil.bytesToHex(buf));
+
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bkv.encodedSize());
+        bkv.packTo(byteBuffer);
+        assertEquals(0, byteBuffer.remaining());
+        byteBuffer.flip();
+        byte[] packed = new byte[byteBuffer.remaining()];
+        byteBuffer.get(packed);
+        assertEquals("0E010248656C6C6F2C20776F726C6405010203040506826464303132050163030405", CodecUtil.bytesToHex(packed));
+
+        assertThrows(PackKVFailException.class, () -> bkv.packTo(new byte[10], 0));
+    }
+
     @Test
     void unpack() {
         UnpackBKVResult unpackBKVResult = BKV.unpack(CodecUtil.hexToBytes("0E010248656C6C6F2C20776F726C6405010203040506826464303132050163030405"));
@@ -74,6 +106,29 @@ class BKVTest {
 //        });
     }
 
+    @Test
+    void unpackWithOffset() {
+        byte[] buf = CodecUtil.hexToBytes("AABB0E010248656C6C6F2C20776F726C6405010203040506826464303132050163030405CCDD");
+        UnpackBKVResult unpackBKVResult = BKV.unpack(buf, 2, buf.length - 2);
+        assertEquals(0, unpackBKVResult.getRemainingLength());
+        assertEquals(buf.length - 2, unpackBKVResult.getOffset());
+
+        BKV bkv = unpackBKVResult.getBKV();
+        assertEquals(4, bkv.getItems().size());
+        assertEquals("Hello, world", bkv.getByIndex(0).getStringValue());
+        assertEquals("dd", bkv.getByIndex(2).getStringKey());
+        assertEquals(99, bkv.getByIndex(3).getNumberKey());
+    }
+
+    @Test
+    void unpackIncomplete() {
+        byte[] buf = CodecUtil.hexToBytes("0E010248656C6C6F2C20776F726C640501020304");
+        UnpackBKVResult unpackBKVResult = BKV.unpack(buf);
+        assertEquals(1, unpackBKVResult.getBKV().getItems().size());
+        assertEquals(15, unpackBKVResult.getOffset());
+        assertEquals("0501020304", CodecUtil.bytesToHex(unpackBKVResult.getRemainingBuffer()));
+    }
+
     @Test
     void testFloat() throws IOException {
         BKV bkv = new BKV();
@@ -171,6 +226,357 @@ class BKVTest {
         }
     }
 
+    @Test
+    void testIndexLookup() throws IOException {
+        BKV bkv = new BKV();
+        int size = 200;
+        for (int i = 0; i < size; i++) {
+            bkv.add(i, i * 2);
+            bkv.add("k" + i, i * 3);
+        }
+        bkv.add(7, 1000);
+        bkv.add("k7", 2000);
+        bkv.add(new KV(CodecUtil.hexToBytes("0001"), false, CodecUtil.encodeNumber(3000)));
+
+        BKV nb = BKV.unpack(bkv.pack()).getBKV();
+        for (int i = 0; i < size; i++) {
+            assertEquals(i * 2L, nb.getNumberValue(i));
+            assertEquals(i * 3L, nb.getNumberValue("k" + i));
+        }
+        assertNull(nb.get(size));
+        assertNull(nb.get("k" + size));
+        assertTrue(nb.containsKey("k199"));
+        assertFalse(nb.containsKey("k200"));
+
+        assertEquals(14L, nb.getNumberValue(7));
+        assertEquals(21L, nb.getNumberValue("k7"));
+        assertArrayEquals(new Long[]{ 14L, 1000L }, nb.getNumberValueList(7).toArray());
+        assertArrayEquals(new Long[]{ 21L, 2000L }, nb.getNumberValueList("k7").toArray());
+        assertArrayEquals(new Long[]{ 2L, 3000L }, nb.getNumberValueList(1).toArray());
+
+        nb.getItems().add(new KV(size, 1));
+        assertEquals(1L, nb.getNumberValue(size));
+    }
+
+    @Test
+    void testIndexAfterItemsChange() {
+        BKV bkv = new BKV();
+        for (int i = 0; i < 10; i++) {
+            bkv.add(i, i);
+        }
+        assertEquals(3L, bkv.getNumberValue(3));
+
+        bkv.getItems().set(3, new KV(99, 7));
+        assertNull(bkv.get(3));
+        assertEquals(7L, bkv.getNumberValue(99));
+
+        bkv.getItems().remove(0);
+        bkv.getItems().add(new KV(0, 100));
+        assertEquals(100L, bkv.getNumberValue(0));
+
+        bkv.getItems().sort((a, b) -> Long.compare(b.getNumberKey(), a.getNumberKey()));
+        assertEquals(99, bkv.getByIndex(0).getNumberKey());
+        assertEquals(7L, bkv.getNumberValue(99));
+        assertEquals(1L, bkv.getNumberValue(1));
+        assertArrayEquals(new Long[]{ 100L }, bkv.getNumberValueList(0).toArray());
+    }
+
+    @Test
+    void testPrimitiveValues() throws IOException {
+        BKV bkv = new BKV();
+        bkv.add(1, 0x123456789AL);
+        bkv.add("f", 1.5f);
+        bkv.add("d", 2.25);
+        bkv.add(2, true);
+        for (int i = 0; i < 10; i++) {
+            bkv.add("list", i);
+        }
+
+        BKV nb = BKV.unpack(bkv.pack()).getBKV();
+        assertEquals(0x123456789AL, nb.getLong(1, -1));
+        assertEquals(-1, nb.getLong(3, -1));
+        assertEquals(0x3456789A, nb.getInt(1, 0));
+        assertEquals(1.5f, nb.getFloat("f", 0));
+        assertEquals(1.5, nb.getDouble("f", 0));
+        assertEquals(2.25, nb.getDouble("d", 0));
+        assertEquals(3.5, nb.getDouble("none", 3.5));
+        assertTrue(nb.getBoolean(2, false));
+        assertTrue(nb.getBoolean("none", true));
+
+        LongList list = nb.getLongList("list");
+        assertEquals(10, list.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, list.get(i));
+        }
+        nb.getLongList(1, list);
+        assertEquals(11, list.size());
+        assertEquals(0x123456789AL, list.get(10));
+        assertTrue(nb.getLongList("none").isEmpty());
+    }
+
+    @Test
+    void testUnpackByteBuffer() throws IOException {
+        BKV bkv = new BKV();
+        bkv.add(1, 0x123456789AL);
+        bkv.add("s", "string");
+        bkv.add(2, 2.25);
+        byte[] packed = bkv.pack();
+        String hex = CodecUtil.bytesToHex(packed);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(packed.length + 3);
+        direct.put((byte) 0xAA).put(packed).put((byte) 0x05).put((byte) 0x01);
+        direct.flip().position(1);
+
+        UnpackBKVResult result = BKV.unpack(direct);
+        assertEquals(hex, CodecUtil.bytesToHex(result.getBKV().pack()));
+        assertEquals(packed.length + 1, direct.position());
+        assertEquals(packed.length + 1, result.getOffset());
+        assertEquals(2, result.getRemainingLength());
+        assertEquals("0501", CodecUtil.bytesToHex(result.getRemainingBuffer()));
+
+        ByteBuffer readOnly = ByteBuffer.wrap(packed).asReadOnlyBuffer();
+        assertEquals(hex, CodecUtil.bytesToHex(BKV.unpack(readOnly).getBKV().pack()));
+        assertFalse(readOnly.hasRemaining());
+    }
+
+    @Test
+    void testUnpackInto() throws IOException {
+        BKV bkv = new BKV();
+        bkv.add(1, 100);
+        bkv.add("s", "string");
+        byte[] first = bkv.pack();
+
+        BKV target = new BKV();
+        assertEquals(first.length, BKV.unpackInto(target, first));
+        assertEquals(100, target.getLong(1, -1));
+        assertEquals("string", target.getStringValue("s"));
+        assertEquals(CodecUtil.bytesToHex(first), CodecUtil.bytesToHex(target.pack()));
+
+        bkv.add(2, 2.5);
+        byte[] second = bkv.pack();
+        byte[] buf = new byte[second.length + 2];
+        System.arraycopy(second, 0, buf, 1, second.length);
+        buf[second.length + 1] = 0x05;
+        assertEquals(second.length + 1, BKV.unpackInto(target, buf, 1, buf.length));
+        assertEquals(3, target.getItems().size());
+        assertEquals(2.5, target.getDouble(2, 0));
+        assertEquals("string", target.getStringValue("s"));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(first.length);
+        direct.put(first).flip();
+        BKV.unpackInto(target, direct);
+        assertFalse(direct.hasRemaining());
+        assertEquals(2, target.getItems().size());
+        assertFalse(target.containsKey(2));
+
+        target.clear();
+        assertTrue(target.getItems().isEmpty());
+    }
+
+    @Test
+    void testUnpackIntoAllocation() throws IOException {
+        java.lang.management.ThreadMXBean threadMXBean = java.lang.management.ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+        BKV bkv = new BKV();
+        for (int i = 0; i < 20; i++) {
+            bkv.add(i, i * 1000);
+        }
+        bkv.add(100, 1.5);
+        bkv.add(101, true);
+        bkv.add("count", 3);
+        byte[] frame = bkv.pack();
+
+        BKV target = new BKV();
+        long sum = 0;
+        for (int i = 0; i < 20000; i++) {
+            sum += decode(target, frame);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10000; i++) {
+            sum += decode(target, frame);
+        }
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(sum > 0);
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes in steady state");
+    }
+
+    private static final BKVKey COUNT = BKVKey.of("count");
+
+    private static long decode(BKV target, byte[] frame) {
+        BKV.unpackInto(target, frame);
+        long sum = target.getLong(19, 0) + target.getInt(3, 0) + target.getLong(COUNT, 0);
+        if (target.getBoolean(101, false)) {
+            sum += (long) target.getDouble(100, 0);
+        }
+        return sum;
+    }
+
+    @Test
+    void testBKVKey() throws IOException {
+        BKVKey name = BKVKey.of("\u540D\u79F0");
+        assertSame(name, BKVKey.of("\u540D\u79F0"));
+        assertEquals(BKVKey.of(0x1234), BKVKey.of(0x1234L));
+
+        BKV bkv = new BKV();
+        bkv.add(name, "\u6E29\u5EA6");
+        bkv.add(BKVKey.of(2), 5);
+        byte[] packed = bkv.pack();
+        assertEquals("0D86E5908DE7A7B0E6B8A9E5BAA6", CodecUtil.bytesToHex(packed).substring(0, 28));
+
+        BKV nb = BKV.unpack(packed).getBKV();
+        assertEquals("\u6E29\u5EA6", nb.getStringValue(name));
+        assertEquals("\u6E29\u5EA6", nb.getStringValue("\u540D\u79F0"));
+        assertEquals("\u540D\u79F0", nb.getByIndex(0).getStringKey());
+        assertEquals(5, nb.getLong(BKVKey.of(2), 0));
+        assertTrue(nb.containsKey(name));
+        assertTrue(nb.containsKey((Object) BKVKey.of(2)));
+        assertFalse(nb.containsKey(BKVKey.of("2")));
+        assertNull(nb.get(BKVKey.of("none")));
+
+        for (int i = 0; i < 20; i++) {
+            nb.add("k" + i, i);
+        }
+        assertEquals(13, nb.getInt(BKVKey.of("k13"), -1));
+        assertEquals("\u6E29\u5EA6", nb.get(name).getStringValue());
+
+        BKVView view = BKVView.unpack(packed);
+        assertEquals("\u6E29\u5EA6", view.getStringValue(name));
+        assertEquals(5, view.getInt(BKVKey.of(2), 0));
+    }
+
+    @Test
+    void testNested() throws IOException {
+        BKV sensor = new BKV();
+        sensor.add("temp", 21.5f);
+        BKV sensors = new BKV();
+        sensors.add(1, "idle");
+        sensors.add(3, sensor);
+        BKV inner = new BKV();
+        inner.add("sensors", sensors);
+        BKV bkv = new BKV();
+        bkv.add(1, "device");
+        bkv.add(0x10, inner);
+
+        byte[] packed = bkv.pack();
+        BKV nb = BKV.unpack(packed).getBKV();
+        assertEquals(21.5f, nb.path(0x10, "sensors", 3, "temp").getFloatValue());
+        assertEquals("idle", nb.path(0x10L, BKVKey.of("sensors"), BKVKey.of(1)).getStringValue());
+        assertNull(nb.path(0x10, "sensors", 4));
+        assertNull(nb.path(0x11, "sensors"));
+        assertEquals(CodecUtil.bytesToHex(inner.pack()), CodecUtil.bytesToHex(nb.path(0x10).getValue()));
+
+        BKVView view = nb.getBKVValue(0x10);
+        assertEquals(1, view.size());
+        assertEquals("idle", view.getBKVValue("sensors").getStringValue(1));
+        assertNull(nb.getBKVValue(0x11));
+        assertThrows(InvalidKeyTypeException.class, () -> nb.path(0x10, 1.0));
+    }
+
+    @Test
+    void testPrimitiveArrays() throws IOException {
+        long[] timestamps = {1600000000000L, 1600000000001L, -1};
+        float[] samples = {0.5f, -1.25f, Float.NaN};
+        BKV bkv = new BKV();
+        bkv.add(1, timestamps);
+        bkv.add("samples", samples);
+        bkv.add(2, new int[]{1, -2});
+        bkv.add(3, new double[]{Math.PI});
+        bkv.add(4, new long[0]);
+
+        byte[] packed = bkv.pack();
+        assertEquals("1A0101" + "00000174876E8000" + "00000174876E8001" + "FFFFFFFFFFFFFFFF",
+                CodecUtil.bytesToHex(packed).substring(0, 54));
+
+        BKV nb = BKV.unpack(packed).getBKV();
+        assertArrayEquals(timestamps, nb.getLongArray(1));
+        assertArrayEquals(samples, nb.getFloatArray("samples"));
+        assertArrayEquals(new int[]{1, -2}, nb.getIntArray(2));
+        assertArrayEquals(new double[]{Math.PI}, nb.getDoubleArray(3));
+        assertEquals(0, nb.getLongArray(4).length);
+        assertNull(nb.getFloatArray(5));
+        assertThrows(InvalidValueTypeException.class, () -> nb.getLongArray("samples"));
+
+        long[] sum = {0};
+        nb.forEachLong(1, v -> sum[0] += v);
+        assertEquals(3200000000000L, sum[0]);
+        nb.forEachLong(5, v -> fail());
+
+        BKV delta = new BKV();
+        delta.addDeltaLongs("ts", timestamps);
+        byte[] deltaPacked = delta.pack();
+        assertEquals(6 + 1 + 6, deltaPacked.length - 4);
+        assertArrayEquals(timestamps, BKV.unpack(deltaPacked).getBKV().getDeltaLongArray("ts"));
+        long[] last = {0};
+        BKVView.unpack(deltaPacked).forEachDeltaLong("ts", v -> last[0] = v);
+        assertEquals(-1, last[0]);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(packed.length);
+        direct.put(packed).flip();
+        BKVView view = BKVView.unpack(direct);
+        assertArrayEquals(timestamps, view.getLongArray(1));
+        assertArrayEquals(samples, view.getFloatArray("samples"));
+        assertArrayEquals(new double[]{Math.PI}, BKVView.unpack(packed).getDoubleArray(3));
+        double[] total = {0};
+        view.forEachDouble(3, v -> total[0] += v);
+        assertEquals(Math.PI, total[0]);
+    }
+
+    @Test
+    void testCompressedValue() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            json.append("{\"id\":").append(i).append(",\"level\":\"info\",\"message\":\"request done\"},");
+        }
+        byte[] blob = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+        byte[] small = "short".getBytes(StandardCharsets.UTF_8);
+
+        BKV bkv = new BKV();
+        bkv.addCompressed(1, blob);
+        bkv.addCompressed("small", small);
+        bkv.addCompressed(2, new byte[0], 0);
+        byte[] packed = bkv.pack();
+        assertTrue(packed.length < blob.length / 4);
+
+        BKV nb = BKV.unpack(packed).getBKV();
+        assertEquals(ValueCompression.DEFLATE, nb.get(1).getValue()[0]);
+        assertEquals(ValueCompression.RAW, nb.get("small").getValue()[0]);
+        assertArrayEquals(blob, nb.getDecompressedValue(1));
+        assertSame(nb.getDecompressedValue(1), nb.get(1).getDecompressedValue());
+        assertArrayEquals(small, nb.getDecompressedValue("small"));
+        assertEquals(0, nb.getDecompressedValue(2).length);
+        assertNull(nb.getDecompressedValue(3));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(packed.length);
+        direct.put(packed).flip();
+        assertArrayEquals(blob, BKVView.unpack(direct).getDecompressedValue(1));
+        assertArrayEquals(blob, BKVView.unpack(packed).getDecompressedValue(1));
+
+        byte[] random = new byte[4096];
+        new Random(0).nextBytes(random);
+        byte[] incompressible = ValueCompression.compress(random, 0);
+        assertEquals(ValueCompression.RAW, incompressible[0]);
+        assertEquals(random.length + 1, incompressible.length);
+
+        byte[] compressed = ValueCompression.compress(blob);
+        assertThrows(InvalidCompressedValueException.class, () -> ValueCompression.decompress(compressed, 0, compressed.length / 2));
+        assertThrows(InvalidCompressedValueException.class, () -> ValueCompression.decompress(new byte[]{ 9 }, 0, 1));
+        assertThrows(InvalidCompressedValueException.class, () -> ValueCompression.decompress(compressed, 0, compressed.length, blob.length - 1));
+
+        // declares about 256 MB in a few bytes
+        byte[] hostile = CodecUtil.hexToBytes("01FFFFFF7F789C030000000001");
+        assertThrows(InvalidCompressedValueException.class, () -> ValueCompression.decompress(hostile, 0, hostile.length, Integer.MAX_VALUE));
+        assertThrows(InvalidCompressedValueException.class, () -> ValueCompression.decompress(hostile, 0, hostile.length));
+
+        byte[] trailing = Arrays.copyOf(compressed, compressed.length + 1);
+        assertThrows(InvalidCompressedValueException.class, () -> ValueCompression.decompress(trailing, 0, trailing.length));
+    }
+
 //    @Test
 //    void testParseContextBKV() {
 //        byte[] buf = CodecUtil.hexToBytes("0884636F6465363034158F6D6F7574685F73636F72655F315F31302E303030158F6D6F7574685F73636F72655F315F32302E303030158F6D6F7574685F73636F72655F325F31302E303030158F6D6F7574685F73636F72655F325F32302E3030300B84726F6C6C2D302E3733330B857069746368322E3431320983796177302E383738108E62675F736966745F6B705F636E7432138F616C6C5F736966745F6B705F636E7431333819936C6566745F73686F756C6465725F6B5F646567302E3030301A9472696768745F73686F756C6465725F6B5F646567302E303030FFFFFFA9671BFD71");
@@ -0,0 +1,105 @@
+package com.dix.codec.bkv;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKVViewTest {
+    @Test
+    void unpack() {
+        BKVView view = BKVView.unpack(CodecUtil.hexToBytes("0E010248656C6C6F2C20776F726C6405010203040506826464303132050163030405"));
+        assertEquals(4, view.size());
+        assertEquals(view.getLimit(), view.getOffset());
+
+        assertTrue(view.containsKey(2));
+        assertTrue(view.containsKey(99));
+        assertTrue(view.containsKey("dd"));
+        assertFalse(view.containsKey(2.0));
+        assertFalse(view.containsKey("d"));
+
+        assertEquals(2, view.getNumberKey(0));
+        assertEquals("Hello, world", view.getStringValue(2));
+        assertEquals("030405", CodecUtil.bytesToHex(view.getValue(1)));
+        assertEquals("dd", view.getStringKey(2));
+        assertEquals("012", view.getStringValue("dd"));
+        assertEquals("030405", CodecUtil.bytesToHex(view.get(99).getValue()));
+        assertNull(view.get(100));
+    }
+
+    @Test
+    void unpackIncomplete() {
+        byte[] buf = CodecUtil.hexToBytes("0E010248656C6C6F2C20776F726C640501020304");
+        BKVView view = BKVView.unpack(buf);
+        assertEquals(1, view.size());
+        assertEquals(15, view.getOffset());
+    }
+
+    @Test
+    void values() throws IOException {
+        BKV bkv = new BKV();
+        bkv.add("true", true);
+        bkv.add(1, 0.2f);
+        bkv.add(0x3, 0x12345678L);
+        bkv.add("s", "string");
+
+        BKVView view = BKVView.unpack(bkv.pack());
+        assertEquals(true, view.getBooleanValue("true"));
+        assertEquals(0.2f, view.getFloatValue(1));
+        assertEquals(0x12345678L, view.getNumberValue(3));
+        assertEquals("string", view.getStringValue("s"));
+        assertNull(view.getNumberValue("none"));
+
+        BKV copy = view.toBKV();
+        assertEquals(CodecUtil.bytesToHex(bkv.pack()), CodecUtil.bytesToHex(copy.pack()));
+    }
+
+    @Test
+    void unpackByteBuffer() {
+        byte[] buf = CodecUtil.hexToBytes("0E010248656C6C6F2C20776F726C6405010203040506826464303132050163030405");
+        ByteBuffer direct = ByteBuffer.allocateDirect(buf.length + 4);
+        direct.position(4);
+        direct.put(buf).flip().position(4);
+
+        BKVView view = BKVView.unpack(direct);
+        assertEquals(4, view.size());
+        assertEquals(direct.limit(), view.getOffset());
+        assertEquals(direct.limit(), direct.position());
+        assertEquals("Hello, world", view.getStringValue(2));
+        assertEquals("012", view.getStringValue("dd"));
+        assertEquals(0x030405, view.getNumberValue(99));
+        assertEquals("030405", CodecUtil.bytesToHex(view.getValue(1)));
+
+        ByteBuffer value = view.getValueBuffer(0);
+        assertTrue(value.isReadOnly());
+        assertEquals(12, value.remaining());
+        assertEquals('H', value.get(0));
+
+        BKVView readOnly = BKVView.unpack(ByteBuffer.wrap(buf).asReadOnlyBuffer());
+        assertEquals(4, readOnly.size());
+        assertEquals("dd", readOnly.getStringKey(2));
+    }
+
+    @Test
+    void nested() throws IOException {
+        BKV child = new BKV();
+        child.add(2, 0x0102);
+        BKV bkv = new BKV();
+        bkv.add("a", "x");
+        bkv.add("child", child);
+        byte[] buf = bkv.pack();
+
+        BKVView view = BKVView.unpack(buf);
+        assertEquals(0x0102, view.path("child", 2).getNumberValue());
+        assertNull(view.path("child", 3));
+        assertEquals(0x0102, view.getBKVValue("child").getInt(2, 0));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(buf.length);
+        direct.put(buf).flip();
+        BKVView nioView = BKVView.unpack(direct);
+        assertEquals(0x0102, nioView.path(BKVKey.of("child"), 2).getNumberValue());
+        assertEquals(1, nioView.getBKVValue("child").size());
+    }
+}
@@ -50,6 +50,23 @@ class KVTest {
         assertEquals("030405", CodecUtil.bytesToHex(kv4.getValue()));
     }
 
+    @Test
+    void unpackWithOffset() {
+        byte[] buf = CodecUtil.hexToBytes("050102030405050163030405");
+        UnpackKVResult unpackKVResult1 = KV.unpack(buf, 0, buf.length);
+        assert unpackKVResult1 != null;
+        assertEquals(6, unpackKVResult1.getOffset());
+        assertEquals(0x02L, unpackKVResult1.getKV().getKey());
+
+        UnpackKVResult unpackKVResult2 = KV.unpack(buf, unpackKVResult1.getOffset(), buf.length);
+        assert unpackKVResult2 != null;
+        assertEquals(buf.length, unpackKVResult2.getOffset());
+        assertEquals(0, unpackKVResult2.getRemainingBuffer().length);
+        assertEquals(99L, unpackKVResult2.getKV().getKey());
+
+        assertNull(KV.unpack(buf, buf.length, buf.length));
+    }
+
     @Test
     void type() {
         new KV("dd", 1);
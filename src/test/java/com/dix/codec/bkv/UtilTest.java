@@ -1,9 +1,17 @@
 package com.dix.codec.bkv;
 
+import com.dix.codec.bkv.exception.InvalidLengthException;
+import com.dix.codec.bkv.exception.InvalidValueTypeException;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 public class UtilTest {
 
     @Test
@@ -34,10 +42,145 @@ public class UtilTest {
         System.out.println(String.format("encode length: %s", CodecUtil.bytesToHex(CodecUtil.encodeLength(88888888))));
     }
 
+    @Test
+    void encodeLengthTo() {
+        byte[] buf = new byte[6];
+        Assertions.assertEquals(5, CodecUtil.encodeLength(88888888, buf, 1));
+        Assertions.assertEquals(CodecUtil.bytesToHex(buf), "00AAB1AC3800");
+        Assertions.assertEquals(CodecUtil.encodedLengthSize(2), 1);
+        Assertions.assertEquals(CodecUtil.encodedLengthSize(666), 2);
+        Assertions.assertEquals(CodecUtil.encodedLengthSize(88888888), 4);
+    }
+
     @Test
     void decodeLength() {
         Assertions.assertEquals(CodecUtil.decodeLength(CodecUtil.hexToBytes("02")).getLength(), 2L);
         Assertions.assertEquals(CodecUtil.decodeLength(CodecUtil.hexToBytes("851A")).getLength(), 666L);
         Assertions.assertEquals(CodecUtil.decodeLength(CodecUtil.hexToBytes("AAB1AC38")).getLength(), 88888888L);
     }
-}
\ No newline at end of file
+
+    @Test
+    void encodeNumberRoundTrip() {
+        for (long n = 0; n <= 0x1FFFFF; n++) {
+            assertNumberRoundTrip(n);
+        }
+        for (int bit = 0; bit < 64; bit++) {
+            long n = 1L << bit;
+            for (long d = -2; d <= 2; d++) {
+                assertNumberRoundTrip(n + d);
+                assertNumberRoundTrip(-(n + d));
+            }
+        }
+        Random random = new Random(0);
+        for (int i = 0; i < 1000000; i++) {
+            assertNumberRoundTrip(random.nextLong() >>> random.nextInt(64));
+        }
+    }
+
+    @Test
+    void encodeLengthRoundTrip() {
+        byte[] buf = new byte[8];
+        for (long n = 1; n <= 0x1FFFFF; n++) {
+            assertLengthRoundTrip(n, buf);
+        }
+        for (long n = 0x200000; n < (1L << 28); n += 127) {
+            assertLengthRoundTrip(n, buf);
+        }
+        for (int bit = 0; bit < 63; bit++) {
+            long n = 1L << bit;
+            Assertions.assertArrayEquals(legacyEncodeLength(n), CodecUtil.encodeLength(n));
+            Assertions.assertArrayEquals(legacyEncodeLength(n - 1 | 1), CodecUtil.encodeLength(n - 1 | 1));
+        }
+        Assertions.assertThrows(InvalidLengthException.class, () -> CodecUtil.encodeLength(0));
+        Assertions.assertThrows(InvalidLengthException.class, () -> CodecUtil.decodeLength(CodecUtil.hexToBytes("8080808001")));
+    }
+
+    @Test
+    void deltaLongArrayRoundTrip() {
+        Assertions.assertEquals(0, CodecUtil.zigzag(0));
+        Assertions.assertEquals(1, CodecUtil.zigzag(-1));
+        Assertions.assertEquals(2, CodecUtil.zigzag(1));
+        Assertions.assertEquals(-1, CodecUtil.zigzag(Long.MIN_VALUE));
+
+        Assertions.assertEquals("0201017F", CodecUtil.bytesToHex(CodecUtil.encodeDeltaLongArray(new long[]{1, 0, -1, -65})));
+        Assertions.assertEquals("8100", CodecUtil.bytesToHex(CodecUtil.encodeDeltaLongArray(new long[]{64})));
+
+        long[] values = {Long.MAX_VALUE, Long.MIN_VALUE, 0, 1600000000000L, 1600000000001L, 1600000000003L, -5};
+        Random random = new Random(0);
+        long[] counters = new long[1000];
+        for (int i = 1; i < counters.length; i++) {
+            counters[i] = counters[i - 1] + random.nextInt(1000) - 100;
+        }
+        for (long[] v : new long[][]{values, counters, new long[0]}) {
+            byte[] buf = CodecUtil.encodeDeltaLongArray(v);
+            Assertions.assertArrayEquals(v, CodecUtil.decodeDeltaLongArray(ByteBuffer.wrap(buf)));
+            List<Long> streamed = new ArrayList<>();
+            CodecUtil.forEachDeltaLong(ByteBuffer.wrap(buf), streamed::add);
+            Assertions.assertEquals(v.length, streamed.size());
+            for (int i = 0; i < v.length; i++) {
+                Assertions.assertEquals(v[i], (long) streamed.get(i));
+            }
+        }
+
+        Assertions.assertThrows(InvalidValueTypeException.class, () -> CodecUtil.decodeDeltaLongArray(ByteBuffer.wrap(CodecUtil.hexToBytes("0281"))));
+        Assertions.assertThrows(InvalidValueTypeException.class, () -> CodecUtil.decodeDeltaLongArray(ByteBuffer.wrap(CodecUtil.hexToBytes("8080808080808080808000"))));
+    }
+
+    private static void assertNumberRoundTrip(long n) {
+        byte[] expected = legacyEncodeNumber(n);
+        byte[] buf = CodecUtil.encodeNumber(n);
+        Assertions.assertArrayEquals(expected, buf);
+        Assertions.assertEquals(expected.length, CodecUtil.encodedNumberSize(n));
+        Assertions.assertEquals(n, CodecUtil.decodeNumber(buf));
+    }
+
+    private static void assertLengthRoundTrip(long n, byte[] buf) {
+        byte[] expected = legacyEncodeLength(n);
+        Assertions.assertArrayEquals(expected, CodecUtil.encodeLength(n));
+        Assertions.assertEquals(expected.length, CodecUtil.encodeLength(n, buf, 1) - 1);
+
+        int size = CodecUtil.decodeLengthSize(buf, 1, buf.length);
+        Assertions.assertEquals(expected.length, size);
+        Assertions.assertEquals(n, CodecUtil.decodeLengthValue(buf, 1, size));
+    }
+
+    // reference implementation the codec was rewritten from, kept to check the wire format is unchanged
+
+    private static byte[] legacyEncodeNumber(long n) {
+        if (n == 0) {
+            return new byte[]{ 0 };
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        while (n != 0) {
+            buffer.write((byte) (n & 0xFF));
+            n = n >>> 8;
+        }
+
+        return reverse(buffer.toByteArray());
+    }
+
+    private static byte[] legacyEncodeLength(long n) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        while (n != 0) {
+            byte v = (byte) (n & 0x7F);
+            v |= (byte) 0x80;
+            buffer.write(v);
+            n = n >>> 7;
+        }
+
+        byte[] buf = reverse(buffer.toByteArray());
+        buf[buf.length - 1] &= (byte) 0x7F;
+
+        return buf;
+    }
+
+    private static byte[] reverse(byte[] buf) {
+        for (int i = 0, j = buf.length - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return buf;
+    }
+}
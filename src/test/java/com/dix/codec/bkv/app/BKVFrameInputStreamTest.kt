@@ -0,0 +1,111 @@
+package com.dix.codec.bkv.app
+
+import com.dix.codec.bkv.BKV
+import com.dix.codec.bkv.CodecUtil
+import com.dix.codec.bkv.exception.InvalidLengthException
+import com.dix.codec.bkv.exception.UnpackKVFailException
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayInputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.nio.ByteBuffer
+import java.nio.channels.ReadableByteChannel
+
+internal class BKVFrameInputStreamTest {
+    private val hex = "FF0D15030101010301020103010301FF113603010101030102130301030403010701"
+
+    /**
+     * Stream returning at most 5 bytes per read
+     */
+    private fun trickle(buf: ByteArray): InputStream {
+        return object : FilterInputStream(ByteArrayInputStream(buf)) {
+            override fun read(b: ByteArray, off: Int, len: Int): Int {
+                return super.read(b, off, minOf(len, 5))
+            }
+        }
+    }
+
+    @Test
+    fun readChecksummed() {
+        val buf = CodecUtil.hexToBytes("0102FF03FF0D16030101010301020103010301$hex$hex")
+        val input = BKVFrameInputStream(trickle(buf + CodecUtil.hexToBytes("FF0D15")))
+        val frames = ArrayList<BKV>()
+        while (true) {
+            frames.add(input.read() ?: break)
+        }
+
+        assertEquals(4, frames.size)
+        assertEquals(0x13L, frames[1].getNumberValue(2))
+        assertEquals(4L, frames[3].getNumberValue(3))
+        assertEquals(4, input.stats.framesOk)
+        assertEquals(2, input.stats.invalidChecksum)
+        assertEquals(19 + 3L, input.stats.bytesSkipped)
+        assertEquals(0, input.pending())
+        assertNull(input.read())
+    }
+
+    @Test
+    fun readRaw() {
+        val bkv = BKV()
+        bkv.add(1, 0x1234)
+        bkv.add("big", ByteArray(100000) { it.toByte() })
+        bkv.add("name", "sensor")
+        val buf = bkv.pack()
+
+        val input = BKVFrameInputStream(trickle(buf), FrameFormat.Raw, bufferSize = 16)
+        assertEquals(0x1234L, input.readView()!!.getNumberValue(1))
+        val big = input.readView()!!
+        assertEquals(100000, big.getValueLength(0))
+        assertEquals(99.toByte(), big.getValue(0)[99])
+        assertEquals("sensor", input.read()!!.getStringValue("name"))
+        assertNull(input.readView())
+        assertEquals(3, input.stats.framesOk)
+
+        val bounded = BKVFrameInputStream(ByteArrayInputStream(buf), FrameFormat.Raw, maxBacklog = 1024)
+        assertNotNull(bounded.readView())
+        assertThrows(UnpackKVFailException::class.java) { bounded.readView() }
+        assertEquals(1, bounded.stats.invalidFrames)
+
+        val overlong = BKVFrameInputStream(ByteArrayInputStream(CodecUtil.hexToBytes("8080808001")), FrameFormat.Raw)
+        assertThrows(InvalidLengthException::class.java) { overlong.readView() }
+        assertEquals(1, overlong.stats.invalidFrames)
+    }
+
+    @Test
+    fun pollChannel() {
+        val buf = CodecUtil.hexToBytes(hex + hex + hex)
+        // non-blocking channel handing out 7 bytes per read and nothing on every other read
+        val channel = object : ReadableByteChannel {
+            var p = 0
+            var reads = 0
+
+            override fun read(dst: ByteBuffer): Int {
+                if (reads++ % 2 == 1) {
+                    return 0
+                }
+                if (p == buf.size) {
+                    return -1
+                }
+                val n = minOf(7, dst.remaining(), buf.size - p)
+                dst.put(buf, p, n)
+                p += n
+                return n
+            }
+
+            override fun isOpen(): Boolean = true
+
+            override fun close() {
+            }
+        }
+
+        val reader = BKVFrameChannelReader(channel)
+        val frames = ArrayList<Long?>()
+        while (!reader.isEndOfStream) {
+            val view = reader.poll() ?: continue
+            frames.add(view.getNumberValue(3))
+        }
+        assertEquals(listOf(1L, 4L, 1L, 4L, 1L, 4L), frames)
+        assertEquals(buf.size.toLong(), reader.stats.bytesReceived)
+    }
+}
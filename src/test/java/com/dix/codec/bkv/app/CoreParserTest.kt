@@ -10,8 +10,11 @@ internal class CoreParserTest {
     @Test
     fun parse() {
         var hex = "FF0D15030101010301020103010301FF113603010101030102130301030403010701"
+        val framesOk = CoreParser.stats.framesOk
         CoreParser.parse(CodecUtil.hexToBytes(hex.replace(" ", "")))
         CoreParser.parse(CodecUtil.hexToBytes(hex.replace(" ", "")))
         CoreParser.parse(CodecUtil.hexToBytes(hex.replace(" ", "")))
+        assertEquals(framesOk + 6, CoreParser.stats.framesOk)
+        assertSame(FrameLogger.None, CoreParser.logger)
     }
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package com.dix.codec.bkv.app
+
+import com.dix.codec.bkv.BKV
+import com.dix.codec.bkv.CodecUtil
+import org.junit.jupiter.api.Test
+
+import org.junit.jupiter.api.Assertions.*
+import java.nio.ByteBuffer
+import java.util.Random
+
+internal class FrameDecoderTest {
+    private val hex = "FF0D15030101010301020103010301FF113603010101030102130301030403010701"
+
+    @Test
+    fun feed() {
+        val frames = ArrayList<BKV>()
+        val decoder = FrameDecoder(FrameListener { frames.add(it) })
+        decoder.feed(CodecUtil.hexToBytes(hex))
+        assertEquals(2, frames.size)
+        assertEquals(0, decoder.pending())
+
+        assertEquals(1L, frames[0].getNumberValue(1))
+        assertEquals(1L, frames[0].getNumberValue(3))
+        assertEquals(0x13L, frames[1].getNumberValue(2))
+        assertEquals(4L, frames[1].getNumberValue(3))
+    }
+
+    @Test
+    fun feedByteByByte() {
+        val frames = ArrayList<BKV>()
+        val decoder = FrameDecoder(FrameListener { frames.add(it) }, initialCapacity = 4)
+        val buf = CodecUtil.hexToBytes(hex + hex + hex)
+        for (i in buf.indices) {
+            decoder.feed(buf, i, 1)
+        }
+        assertEquals(6, frames.size)
+        assertEquals(0, decoder.pending())
+    }
+
+    @Test
+    fun resync() {
+        val frames = ArrayList<BKV>()
+        val decoder = FrameDecoder(FrameListener { frames.add(it) })
+        // garbage, a frame with bad checksum, then two good frames
+        decoder.feed(ByteBuffer.wrap(CodecUtil.hexToBytes("0102FF03FF0D16030101010301020103010301$hex")))
+        assertEquals(2, frames.size)
+        assertEquals(0, decoder.pending())
+
+        val stats = decoder.stats
+        assertEquals(2, stats.framesOk)
+        assertEquals(2, stats.invalidChecksum)
+        assertEquals(2, stats.resyncs)
+        assertEquals(19, stats.bytesSkipped)
+        assertEquals(53, stats.bytesReceived)
+    }
+
+    @Test
+    fun logger() {
+        val messages = ArrayList<String>()
+        val logger = object : FrameLogger {
+            override fun isEnabled(level: LogLevel): Boolean = level >= LogLevel.DEBUG
+
+            override fun log(level: LogLevel, message: String) {
+                messages.add("$level $message")
+            }
+        }
+        val decoder = FrameDecoder(FrameListener { }, logger)
+        decoder.feed(CodecUtil.hexToBytes("FF0D16030101010301020103010301$hex"))
+        assertEquals(listOf("DEBUG checksum not match, calculateChecksum=21, checksum=22"), messages)
+    }
+
+    @Test
+    fun incomplete() {
+        val frames = ArrayList<BKV>()
+        val decoder = FrameDecoder(FrameListener { frames.add(it) })
+        val buf = CodecUtil.hexToBytes(hex)
+        decoder.feed(buf, 0, 20)
+        assertEquals(1, frames.size)
+        assertEquals(5, decoder.pending())
+
+        decoder.feed(buf, 20, buf.size - 20)
+        assertEquals(2, frames.size)
+    }
+
+    @Test
+    fun independentDecoders() {
+        val frames1 = ArrayList<BKV>()
+        val frames2 = ArrayList<BKV>()
+        val decoder1 = FrameDecoder(FrameListener { frames1.add(it) })
+        val decoder2 = FrameDecoder(FrameListener { frames2.add(it) })
+        val buf = CodecUtil.hexToBytes(hex)
+        decoder1.feed(buf, 0, 10)
+        decoder2.feed(buf, 15, 10)
+        decoder1.feed(buf, 10, 5)
+        decoder2.feed(buf, 25, buf.size - 25)
+        assertEquals(1, frames1.size)
+        assertEquals(1, frames2.size)
+        assertEquals(4L, frames2[0].getNumberValue(3))
+    }
+
+    @Test
+    fun scanHead() {
+        val random = Random(0)
+        val frame = CodecUtil.hexToBytes(hex)
+        for (garbageSize in 0..40) {
+            for (round in 0..20) {
+                val garbage = ByteArray(garbageSize)
+                random.nextBytes(garbage)
+                for (i in garbage.indices) {
+                    if (garbage[i] == FrameDecoder.Head) {
+                        garbage[i] = 0x7F
+                    }
+                }
+
+                val frames = ArrayList<BKV>()
+                val decoder = FrameDecoder(FrameListener { frames.add(it) })
+                decoder.feed(garbage + frame)
+                assertEquals(2, frames.size)
+                assertEquals(garbageSize.toLong(), decoder.stats.bytesSkipped)
+            }
+        }
+    }
+
+    @Test
+    fun boundedBacklog() {
+        val frames = ArrayList<BKV>()
+        val decoder = FrameDecoder(FrameListener { frames.add(it) }, maxBacklog = 1024)
+        val garbage = ByteArray(1024 * 1024) { 0x01 }
+        // a head every 200 bytes with a length that never completes
+        for (i in garbage.indices step 200) {
+            garbage[i] = FrameDecoder.Head
+            garbage[i + 1] = 0xFE.toByte()
+        }
+        decoder.feed(garbage + ByteArray(FrameDecoder.MaxFrameSize) { 0x01 } + CodecUtil.hexToBytes(hex))
+        assertEquals(1024, decoder.capacity())
+        assertTrue(decoder.stats.resyncs > 0)
+        assertEquals(2, frames.size)
+
+        assertThrows(IllegalArgumentException::class.java) {
+            FrameDecoder(FrameListener { }, maxBacklog = 100)
+        }
+    }
+}
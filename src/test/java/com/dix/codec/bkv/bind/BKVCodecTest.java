@@ -0,0 +1,137 @@
+package com.dix.codec.bkv.bind;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.CodecUtil;
+import com.dix.codec.bkv.exception.InvalidKeyTypeException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BKVCodecTest {
+    static class Header {
+        @BKVField(key = 0x01)
+        short type;
+    }
+
+    static class Heartbeat extends Header {
+        @BKVField(key = 0x02)
+        Long requestId;
+
+        @BKVField(key = 0x03)
+        boolean online;
+
+        @BKVField(key = 0x04)
+        float temperature;
+
+        @BKVField(key = 0x105)
+        double latitude;
+
+        @BKVField(name = "name")
+        String name;
+
+        @BKVField(name = "raw")
+        byte[] raw;
+
+        @BKVField(key = 0x123456789L)
+        int far;
+
+        int ignored;
+    }
+
+    static class Invalid {
+        @BKVField
+        long value;
+    }
+
+    static class DuplicateNumberKey extends Header {
+        @BKVField(key = 0x01)
+        int kind;
+    }
+
+    static class DuplicateStringKey {
+        @BKVField(name = "name")
+        String name;
+
+        @BKVField(name = "name")
+        String alias;
+    }
+
+    static class LongStringKey {
+        @BKVField(name = "0123456789012345678901234567890123456789012345678901234567890123"
+                + "0123456789012345678901234567890123456789012345678901234567890123")
+        String name;
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Heartbeat heartbeat = new Heartbeat();
+        heartbeat.type = 7;
+        heartbeat.requestId = 0x123456789AL;
+        heartbeat.online = true;
+        heartbeat.temperature = 36.5f;
+        heartbeat.latitude = 31.2304;
+        heartbeat.name = "device";
+        heartbeat.far = -1;
+
+        BKVCodec<Heartbeat> codec = BKVCodec.of(Heartbeat.class);
+        assertSame(codec, BKVCodec.of(Heartbeat.class));
+        byte[] packed = codec.encode(heartbeat);
+        assertEquals(packed.length, codec.encodedSize(heartbeat));
+
+        BKV bkv = BKV.unpack(packed).getBKV();
+        assertEquals(7, bkv.getInt(1, 0));
+        assertEquals(0x123456789AL, bkv.getLong(2, 0));
+        assertTrue(bkv.getBoolean(3, false));
+        assertEquals(36.5f, bkv.getFloat(4, 0));
+        assertEquals(31.2304, bkv.getDouble(0x105, 0));
+        assertEquals("device", bkv.getStringValue("name"));
+        assertFalse(bkv.containsKey("raw"));
+
+        Heartbeat decoded = codec.decode(packed);
+        assertEquals(7, decoded.type);
+        assertEquals(0x123456789AL, decoded.requestId);
+        assertTrue(decoded.online);
+        assertEquals(36.5f, decoded.temperature);
+        assertEquals(31.2304, decoded.latitude);
+        assertEquals("device", decoded.name);
+        assertNull(decoded.raw);
+        assertEquals(-1, decoded.far);
+    }
+
+    @Test
+    void decodeFromBKV() throws IOException {
+        BKV bkv = new BKV();
+        bkv.add(1, 3);
+        bkv.add(99, "unknown");
+        bkv.add("raw", CodecUtil.hexToBytes("0102"));
+        bkv.add("other", 1);
+        bkv.add(2, 5);
+        byte[] packed = bkv.pack();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(packed.length);
+        direct.put(packed).flip();
+        Heartbeat decoded = BKVCodec.of(Heartbeat.class).decode(direct);
+        assertFalse(direct.hasRemaining());
+        assertEquals(3, decoded.type);
+        assertEquals(5L, decoded.requestId);
+        assertEquals("0102", CodecUtil.bytesToHex(decoded.raw));
+
+        ByteBuffer heap = ByteBuffer.allocate(BKVCodec.of(Heartbeat.class).encodedSize(decoded) + 2);
+        heap.position(2);
+        BKVCodec.of(Heartbeat.class).encode(decoded, heap);
+        heap.flip().position(2);
+        assertEquals(3, BKVCodec.of(Heartbeat.class).decode(heap).type);
+    }
+
+    @Test
+    void invalidBinding() {
+        assertThrows(InvalidKeyTypeException.class, () -> BKVCodec.reflective(Invalid.class));
+        assertThrows(InvalidKeyTypeException.class, () -> BKVCodec.reflective(DuplicateNumberKey.class));
+        assertThrows(InvalidKeyTypeException.class, () -> BKVCodec.reflective(DuplicateStringKey.class));
+        assertThrows(InvalidKeyTypeException.class, () -> BKVCodec.reflective(LongStringKey.class));
+        assertEquals("com.example.Outer_InnerBKVCodec", BKVCodec.generatedName("com.example.Outer$Inner"));
+    }
+}
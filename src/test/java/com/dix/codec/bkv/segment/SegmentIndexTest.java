@@ -0,0 +1,133 @@
+package com.dix.codec.bkv.segment;
+
+import com.dix.codec.bkv.BKV;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentIndexTest {
+    private static final int COUNT = 1000;
+
+    private static Path writeSegment(Path dir) throws IOException {
+        Path path = dir.resolve("0.seg");
+        try (SegmentWriter writer = SegmentWriter.open(path)) {
+            for (int i = 0; i < COUNT; i++) {
+                BKV bkv = new BKV();
+                bkv.add(1, 1000 + i * 10);
+                bkv.add("n", i);
+                writer.append(bkv);
+            }
+        }
+        return path;
+    }
+
+    @Test
+    void seekRecord(@TempDir Path dir) throws IOException {
+        Path path = writeSegment(dir);
+        SegmentIndex index = SegmentIndex.build(path, 64);
+        assertEquals((COUNT + 63) / 64, index.size());
+
+        try (SegmentReader reader = SegmentReader.open(path)) {
+            for (long n : new long[]{0, 1, 63, 64, 65, 500, COUNT - 1}) {
+                assertTrue(index.seekRecord(reader, n));
+                assertEquals(n, reader.getRecordNumber());
+                assertEquals(n, reader.next().getLong("n", -1));
+            }
+            assertFalse(index.seekRecord(reader, COUNT));
+        }
+    }
+
+    @Test
+    void seekValue(@TempDir Path dir) throws IOException {
+        Path path = writeSegment(dir);
+        SegmentIndex index = SegmentIndex.build(path, 64, 1);
+        assertEquals(1000, index.getMin(0));
+        assertEquals(1000 + 63 * 10, index.getMax(0));
+
+        try (SegmentReader reader = SegmentReader.open(path)) {
+            assertTrue(index.seekValue(reader, 0));
+            assertEquals(0, reader.next().getLong("n", -1));
+
+            assertTrue(index.seekValue(reader, 5005));
+            assertEquals(401, reader.getRecordNumber());
+            assertEquals(5010, reader.nextView().getLong(1, -1));
+
+            assertFalse(index.seekValue(reader, 1000 + COUNT * 10));
+        }
+    }
+
+    @Test
+    void sidecar(@TempDir Path dir) throws IOException {
+        Path path = writeSegment(dir);
+        SegmentIndex index = SegmentIndex.open(path, 100, 1);
+        Path sidecar = SegmentIndex.sidecarPath(path);
+        assertTrue(Files.exists(sidecar));
+        assertEquals(SegmentIndex.HEADER_SIZE + 10 * SegmentIndex.ENTRY_SIZE, Files.size(sidecar));
+
+        SegmentIndex loaded = SegmentIndex.load(sidecar);
+        assertEquals(index.size(), loaded.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(index.getOffset(i), loaded.getOffset(i));
+            assertEquals(index.getMax(i), loaded.getMax(i));
+        }
+
+        try (SegmentWriter writer = SegmentWriter.open(path)) {
+            BKV bkv = new BKV();
+            bkv.add(1, 99999);
+            writer.append(bkv);
+        }
+        SegmentIndex rebuilt = SegmentIndex.open(path, 100, 1);
+        assertEquals(11, rebuilt.size());
+        assertEquals(99999, rebuilt.getMax(10));
+    }
+
+    /**
+     * Open the index of path and check the sidecar is reused, not rewritten
+     */
+    private static void assertReused(Path path, int expectedSize) throws IOException {
+        Path sidecar = SegmentIndex.sidecarPath(path);
+        FileTime marker = FileTime.fromMillis(1000);
+        Files.setLastModifiedTime(sidecar, marker);
+        assertEquals(expectedSize, SegmentIndex.open(path, 100).size());
+        assertEquals(marker, Files.getLastModifiedTime(sidecar));
+    }
+
+    @Test
+    void sidecarTornTail(@TempDir Path dir) throws IOException {
+        Path path = writeSegment(dir);
+        Files.write(path, new byte[]{ 0x7F, 0x01, 0x02 }, StandardOpenOption.APPEND);
+
+        assertEquals(10, SegmentIndex.open(path, 100).size());
+        assertReused(path, 10);
+        assertReused(path, 10);
+    }
+
+    @Test
+    void sidecarLiveWriter(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("0.seg");
+        try (SegmentWriter writer = SegmentWriter.open(path)) {
+            for (int i = 0; i < COUNT; i++) {
+                BKV bkv = new BKV();
+                bkv.add("n", i);
+                writer.append(bkv);
+            }
+            assertTrue(Files.size(path) > writer.position());
+
+            assertEquals(10, SegmentIndex.open(path, 100).size());
+            assertReused(path, 10);
+
+            BKV bkv = new BKV();
+            bkv.add("n", COUNT);
+            writer.append(bkv);
+            assertEquals(11, SegmentIndex.open(path, 100).size());
+            assertReused(path, 11);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.dix.codec.bkv.segment;
+
+import com.dix.codec.bkv.BKV;
+import com.dix.codec.bkv.BKVView;
+import com.dix.codec.bkv.exception.InvalidSegmentException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentTest {
+    private static BKV record(int i) {
+        BKV bkv = new BKV();
+        bkv.add(1, i);
+        bkv.add("name", "record-" + i);
+        return bkv;
+    }
+
+    @Test
+    void writeAndRead(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("0.seg");
+        int count = 10000;
+        long expectedSize = Segment.HEADER_SIZE;
+        try (SegmentWriter writer = SegmentWriter.open(path, 4096, 100)) {
+            for (int i = 0; i < count; i++) {
+                assertEquals(expectedSize, writer.append(record(i)));
+                expectedSize = writer.position();
+            }
+            writer.commit();
+            assertEquals(count, writer.getRecordCount());
+        }
+        assertEquals(expectedSize, Files.size(path));
+
+        try (SegmentReader reader = SegmentReader.open(path, 4096)) {
+            for (int i = 0; i < count; i++) {
+                BKVView view = reader.nextView();
+                assertNotNull(view);
+                assertEquals(i, view.getLong(1, -1));
+                assertEquals("record-" + i, view.getStringValue("name"));
+            }
+            assertNull(reader.nextView());
+            assertEquals(count, reader.getRecordNumber());
+            assertEquals(expectedSize, reader.position());
+        }
+
+        try (SegmentReader reader = SegmentReader.open(path)) {
+            assertEquals(0, reader.next().getLong(1, -1));
+        }
+    }
+
+    @Test
+    void reopen(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("0.seg");
+        try (SegmentWriter writer = SegmentWriter.open(path)) {
+            writer.append(record(0));
+        }
+
+        byte[] packed = record(1).pack();
+        try (SegmentWriter writer = SegmentWriter.open(path)) {
+            assertEquals(1, writer.getRecordCount());
+            writer.append(packed, 0, packed.length);
+        }
+
+        try (SegmentReader reader = SegmentReader.open(path)) {
+            assertEquals(0, reader.next().getLong(1, -1));
+            assertEquals(1, reader.next().getLong(1, -1));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void tornTail(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("0.seg");
+        long end;
+        try (SegmentWriter writer = SegmentWriter.open(path)) {
+            writer.append(record(0));
+            writer.append(record(1));
+            end = writer.position();
+        }
+
+        // a record with a valid length but a body never written, followed by the zeroed tail of a window
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(end);
+            file.write(new byte[]{0x10, 0, 0, 0});
+            file.setLength(end + 4096);
+        }
+
+        try (SegmentReader reader = SegmentReader.open(path)) {
+            assertNotNull(reader.nextView());
+            assertNotNull(reader.nextView());
+            assertNull(reader.nextView());
+            assertEquals(end, reader.position());
+        }
+
+        try (SegmentWriter writer = SegmentWriter.open(path)) {
+            assertEquals(end, writer.position());
+            writer.append(record(2));
+        }
+        try (SegmentReader reader = SegmentReader.open(path)) {
+            reader.next();
+            reader.next();
+            assertEquals(2, reader.next().getLong(1, -1));
+        }
+    }
+
+    @Test
+    void invalidHeader(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("0.seg");
+        Files.write(path, new byte[]{'B', 'K', 'V', 'X', 1, 0, 0, 0});
+        assertThrows(InvalidSegmentException.class, () -> SegmentReader.open(path));
+        assertThrows(InvalidSegmentException.class, () -> SegmentWriter.open(path));
+    }
+}